@@ -2,97 +2,172 @@ import java.util.*;
 import java.util.function.BiPredicate;
 import java.util.function.Function;
 import java.util.function.Predicate;
-import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 class AStarPathingStrategy
         implements PathingStrategy {
 
+    //optional node budgets and memory of unreachable goals, null searches without limits
+    private final SearchLimits limits;
+
+    public AStarPathingStrategy() {
+        this(null);
+    }
+
+    public AStarPathingStrategy(SearchLimits limits) {
+        this.limits = limits;
+    }
 
     public List<Point> computePath(Point start, Point end,
                                    Predicate<Point> canPassThrough,
                                    BiPredicate<Point, Point> withinReach,
                                    Function<Point, Stream<Point>> potentialNeighbors) {
+        return computePath(start, end, canPassThrough, withinReach,
+                Neighbors.of(potentialNeighbors));
+    }
+
+    public List<Point> computePath(Point start, Point end,
+                                   Predicate<Point> canPassThrough,
+                                   BiPredicate<Point, Point> withinReach,
+                                   Neighbors neighbors) {
         List<Point> path = new LinkedList<>();
 
+        if (limits != null && limits.isUnreachable(start, end)) {
+            return path;
+        }
+        int budget = limits == null ? Integer.MAX_VALUE : limits.acquire();
+        int expanded = 0;
+        //expanded node nearest the goal, where a search cut short heads for
+        Point closest = start;
+        int closestH = start.manhattanDist(end);
+        //blocked cells around the explored region, only needed to remember unreachable goals
+        Set<Point> walls = limits == null ? null : new HashSet<>();
+
+        //all search state is local to this call, so the points themselves are never touched
+        //and searches can run concurrently
         //hashmap for constant-time performance for the basic operations (get and put, contains)
         //value held is Gvalue
         Map<Point, Integer> closedMap = new HashMap<>();
         Map<Point, Integer> openMap = new HashMap<>();
+        Map<Point, Point> priors = new HashMap<>();
 
         //priority queue for fast sorting
         //head of this queue is the least element, lowest F-val
         //constant time for the retrieval methods (peek, element, and size)
-        Queue<Point> openList = new PriorityQueue<>(Comparator.comparing(Point::getF));
+        //a node whose g no longer matches openMap was superseded by a better one and is skipped
+        Queue<Node> openList = new PriorityQueue<>(Comparator.comparingInt(Node::getF));
 
         //1. Choose/know starting and ending points of the path
         //Intialize start point
-        start.setG(0);
-        start.setH(start.manhattanDist(end));
-        start.setF(start.getG() + start.getH());
-
         //2. Add start node to the open list and mark it as the current node
-        openList.add(start);
-        Point current = null;
+        openList.add(new Node(start, 0, start.manhattanDist(end)));
+        openMap.put(start, 0);
+        Node current = null;
 
         while (!openList.isEmpty()) {
             //5. Choose a node from the open list with the smallest f value and make it the current
             //node
-            //try poll for O(1)?
-//            current = openList.remove();
             current = openList.poll();
+            Point currentPoint = current.getPoint();
+            if (closedMap.containsKey(currentPoint)
+                    || current.getG() != openMap.get(currentPoint)) {
+                continue;
+            }
 
             // reached goal!
-            if (withinReach.test(current, end)) {
-                while (current != start) {
-                    path.add(0, current);
-                    current = current.getPrior();
+            if (withinReach.test(currentPoint, end)) {
+                if (limits != null) {
+                    limits.release(budget, expanded, false);
                 }
-                return path;
+                return buildPath(path, priors, start, currentPoint);
             }
 
-            // get valid neighbours that are not in the closed list
-            List<Point> validNeighbours = potentialNeighbors.apply(current)
-                    .filter(canPassThrough)
-                    .filter(n -> !closedMap.containsKey(n))
-                    .collect(Collectors.toList());
+            // out of budget, take the best partial path
+            if (expanded == budget) {
+                limits.release(budget, expanded, true);
+                return buildPath(path, priors, start, closest);
+            }
+            expanded++;
+            int currentH = currentPoint.manhattanDist(end);
+            if (currentH < closestH) {
+                closest = currentPoint;
+                closestH = currentH;
+            }
 
             //3. Analyze all valid adjacent nodes that are not on the closed list
-            for (Point adjacent : validNeighbours) {
-                int adjG = current.getG() + adjacent.manhattanDist(current);
+            //neighbours come in as coordinates, no stream or list per expanded node
+            int currentG = current.getG();
+            neighbors.forEach(currentPoint.x, currentPoint.y, (x, y) -> {
+                Point adjacent = new Point(x, y);
+                if (!canPassThrough.test(adjacent)) {
+                    if (walls != null) {
+                        walls.add(adjacent);
+                    }
+                    return;
+                }
+                if (closedMap.containsKey(adjacent)) {
+                    return;
+                }
+
+                int adjG = currentG + adjacent.manhattanDist(currentPoint);
                 int adjH = adjacent.manhattanDist(end);
                 int adjF = adjG + adjH;
 
                 //3.a. Add to Open List if not already in it
-                if (!openMap.containsKey(adjacent)) {
-                    adjacent.setPrior(current);
-                    adjacent.setG(adjG);
-                    adjacent.setH(adjH);
-                    adjacent.setF(adjF);
-                    openList.add(adjacent);
-                    openMap.put(adjacent, adjG);
-
-                }
                 //3.c. If the calculated g value is better than a previously calculated g value, replace
                 //the old g value with the new one
-                else if (openMap.containsKey(adjacent) && adjG < openMap.get(adjacent)) {
-                    openList.remove(adjacent);
-                    adjacent.setG(adjG);
-                    adjacent.setH(adjH);
-                    adjacent.setF(adjF);
-                    adjacent.setPrior(current); //3.c.iii.Mark the adjacent node’s prior vertex as the current node
-                    openList.add(adjacent);
-                    openMap.replace(adjacent, adjG);
-
+                if (!openMap.containsKey(adjacent) || adjG < openMap.get(adjacent)) {
+                    priors.put(adjacent, currentPoint); //3.c.iii.Mark the adjacent node's prior vertex as the current node
+                    openList.add(new Node(adjacent, adjG, adjF));
+                    openMap.put(adjacent, adjG);
                 }
 
-            }
+            });
             //4. Move the current node to the closed list
-            closedMap.put(current, current.getG());
+            closedMap.put(currentPoint, current.getG());
 
         }
+        //everything reachable was searched, so the goal cannot be reached until a wall opens
+        if (limits != null) {
+            limits.release(budget, expanded, false);
+            limits.markUnreachable(start, end, walls);
+        }
         return path;
 
 
     }
+
+    private static List<Point> buildPath(List<Point> path, Map<Point, Point> priors,
+                                         Point start, Point goal) {
+        Point currentPoint = goal;
+        while (!currentPoint.equals(start)) {
+            path.add(0, currentPoint);
+            currentPoint = priors.get(currentPoint);
+        }
+        return path;
+    }
+
+    private static final class Node {
+        private final Point point;
+        private final int g;
+        private final int f;
+
+        Node(Point point, int g, int f) {
+            this.point = point;
+            this.g = g;
+            this.f = f;
+        }
+
+        Point getPoint() {
+            return point;
+        }
+
+        int getG() {
+            return g;
+        }
+
+        int getF() {
+            return f;
+        }
+    }
 }
\ No newline at end of file
@@ -10,6 +10,14 @@ public class Activity implements Action {
         this.world = world;
         this.imageStore = imageStore;
     }
+    public ActiveEntity getEntity() {
+        return entity;
+    }
+
+    public WorldModel getWorld() {
+        return world;
+    }
+
     public void executeAction(EventScheduler scheduler)
     {
         entity.executeActivity(this.world, this.imageStore, scheduler);
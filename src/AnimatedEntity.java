@@ -17,24 +17,26 @@ public abstract class AnimatedEntity extends ActiveEntity{
         setImageIndex((getImageIndex() + 1) % getImages().size());
     }
 
-    protected Animation createAnimationAction(int repeatCount)
+    protected Animation createAnimationAction(WorldModel world, int repeatCount)
     {
-        return new Animation(this, repeatCount);
+        return new Animation(this, world, repeatCount);
     }
     protected void scheduleActions(EventScheduler scheduler,
                                 WorldModel world, ImageStore imageStore)
     {
         scheduler.scheduleEvent(this, this.createActivityAction(world, imageStore), this.getActionPeriod());
-        scheduler.scheduleEvent(this, this.createAnimationAction(0), this.getAnimationPeriod());
+        scheduler.scheduleEvent(this, this.createAnimationAction(world, 0), this.getAnimationPeriod());
     }
     protected void executeAnimationAction(EventScheduler scheduler, Animation animation)
     {
         nextImage();
+        // the new frame only shows once the view redraws this tile
+        animation.getWorld().markDirty(getPosition());
 
         if (animation.getRepeatCount() != 1)
         {
             scheduler.scheduleEvent(this,
-                    createAnimationAction(
+                    createAnimationAction(animation.getWorld(),
                             Math.max(animation.getRepeatCount() - 1, 0)),
                     this.getAnimationPeriod());
         }
@@ -1,16 +1,22 @@
 public class Animation implements Action {
     private AnimatedEntity entity;
+    private WorldModel world;
     private int repeatCount;
 
-    public Animation(AnimatedEntity entity, int repeatCount)
+    public Animation(AnimatedEntity entity, WorldModel world, int repeatCount)
     {
         this.entity = entity;
+        this.world = world;
         this.repeatCount = repeatCount;
     }
     public int getRepeatCount(){
         return repeatCount;
     }
 
+    public WorldModel getWorld() {
+        return world;
+    }
+
     public void executeAction(EventScheduler scheduler){
         entity.executeAnimationAction(scheduler, this);
     }
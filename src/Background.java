@@ -14,6 +14,10 @@ final class Background
       this.id = id;
       this.images = images;
    }
+   protected String getId()
+   {
+      return id;
+   }
    protected List<PImage> getImages()
    {
       return images;
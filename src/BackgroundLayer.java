@@ -0,0 +1,236 @@
+import java.util.*;
+
+/*
+BackgroundLayer: palette-indexed, run-length encoded background tiles
+Every distinct Background (same id, images and image index) goes into a palette once, and
+each row is a list of runs of one palette entry. A row nobody has painted is not stored at
+all and reads as the default background (palette entry 0), so a huge map costs a few runs per
+painted row. Drawing walks the runs of a row rather than looking up every cell.
+ */
+
+final class BackgroundLayer
+{
+   public interface RunVisitor
+   {
+      /* columns [startCol, endCol) of the row all show background */
+      void visit(int startCol, int endCol, Background background);
+   }
+
+   private static final int INITIAL_RUNS = 4;
+   private static final int RECENT_SIZE = 16;
+
+   private final int numCols;
+   private final List<Background> palette;
+   private final Map<List<Object>, Integer> paletteIndex;
+   // Backgrounds never change, so one met lately needs no key built for it
+   private final Background[] recent = new Background[RECENT_SIZE];
+   private final int[] recentIndex = new int[RECENT_SIZE];
+   private final Row[] rows;
+   private int runCount;
+   // a loader sets one Background object over and over
+   private Background lastBackground;
+   private int lastIndex;
+
+   /* runs of a row: starts[i] is the first column of run i, which shows palette entry values[i] */
+   private static final class Row
+   {
+      private int[] starts = new int[INITIAL_RUNS];
+      private int[] values = new int[INITIAL_RUNS];
+      private int count;
+   }
+
+   public BackgroundLayer(int numRows, int numCols, Background defaultBackground)
+   {
+      this.numCols = numCols;
+      this.palette = new ArrayList<>();
+      this.paletteIndex = new HashMap<>();
+      this.rows = new Row[numRows];
+      indexOf(defaultBackground);
+   }
+
+   /* what unpainted cells show */
+   public Background getDefault()
+   {
+      return this.palette.get(0);
+   }
+
+   public int getPaletteSize()
+   {
+      return this.palette.size();
+   }
+
+   /* runs stored for painted rows; unpainted rows store none */
+   public int getRunCount()
+   {
+      return this.runCount;
+   }
+
+   public Background get(int x, int y)
+   {
+      Row row = this.rows[y];
+      if (row == null)
+      {
+         return this.palette.get(0);
+      }
+      return this.palette.get(row.values[runAt(row, x)]);
+   }
+
+   public void set(int x, int y, Background background)
+   {
+      int value = indexOf(background);
+      Row row = this.rows[y];
+
+      if (row == null)
+      {
+         if (value == 0)
+         {
+            return;
+         }
+         row = new Row();
+         row.count = 1;
+         this.rows[y] = row;
+         this.runCount++;
+      }
+
+      int run = runAt(row, x);
+      int old = row.values[run];
+      if (old == value)
+      {
+         return;
+      }
+
+      int end = run + 1 < row.count ? row.starts[run + 1] : this.numCols;
+      if (x == row.starts[run] && x + 1 < end && run > 0 && row.values[run - 1] == value)
+      {
+         // the run to the left just grows by one, as when a row is loaded in order
+         row.starts[run] = x + 1;
+         return;
+      }
+      if (x > row.starts[run])
+      {
+         insertRun(row, ++run, x, old);
+      }
+      if (x + 1 < end)
+      {
+         insertRun(row, run + 1, x + 1, old);
+      }
+      row.values[run] = value;
+
+      /* join with neighbours showing the same thing */
+      if (run + 1 < row.count && row.values[run + 1] == value)
+      {
+         removeRun(row, run + 1);
+      }
+      if (run > 0 && row.values[run - 1] == value)
+      {
+         removeRun(row, run);
+      }
+
+      if (row.count == 1 && row.values[0] == 0)
+      {
+         this.rows[y] = null;
+         this.runCount--;
+      }
+   }
+
+   /*
+      Visits the runs of row y that overlap columns [fromCol, toCol), clipped
+      to that range
+   */
+   public void forEachRun(int y, int fromCol, int toCol, RunVisitor visitor)
+   {
+      Row row = this.rows[y];
+      if (row == null)
+      {
+         visitor.visit(fromCol, toCol, this.palette.get(0));
+         return;
+      }
+
+      for (int run = runAt(row, fromCol); run < row.count && row.starts[run] < toCol; run++)
+      {
+         int end = run + 1 < row.count ? row.starts[run + 1] : this.numCols;
+         visitor.visit(Math.max(row.starts[run], fromCol), Math.min(end, toCol),
+            this.palette.get(row.values[run]));
+      }
+   }
+
+   private int indexOf(Background background)
+   {
+      if (background == this.lastBackground)
+      {
+         return this.lastIndex;
+      }
+      int slot = System.identityHashCode(background) & (RECENT_SIZE - 1);
+      int index;
+      if (this.recent[slot] == background)
+      {
+         index = this.recentIndex[slot];
+      }
+      else
+      {
+         List<Object> key = Arrays.asList(background.getId(), background.getImages(),
+            background.getImageIndex());
+         Integer known = this.paletteIndex.get(key);
+         if (known == null)
+         {
+            known = this.palette.size();
+            this.palette.add(background);
+            this.paletteIndex.put(key, known);
+         }
+         index = known;
+         this.recent[slot] = background;
+         this.recentIndex[slot] = index;
+      }
+      this.lastBackground = background;
+      this.lastIndex = index;
+      return index;
+   }
+
+   /* last run starting at or before x */
+   private static int runAt(Row row, int x)
+   {
+      int low = 0;
+      int high = row.count - 1;
+      // world files list a row left to right, so loading keeps landing in the last run
+      if (row.starts[high] <= x)
+      {
+         return high;
+      }
+      while (low < high)
+      {
+         int mid = (low + high + 1) >>> 1;
+         if (row.starts[mid] <= x)
+         {
+            low = mid;
+         }
+         else
+         {
+            high = mid - 1;
+         }
+      }
+      return low;
+   }
+
+   private void insertRun(Row row, int run, int start, int value)
+   {
+      if (row.count == row.starts.length)
+      {
+         row.starts = Arrays.copyOf(row.starts, row.count * 2);
+         row.values = Arrays.copyOf(row.values, row.count * 2);
+      }
+      System.arraycopy(row.starts, run, row.starts, run + 1, row.count - run);
+      System.arraycopy(row.values, run, row.values, run + 1, row.count - run);
+      row.starts[run] = start;
+      row.values[run] = value;
+      row.count++;
+      this.runCount++;
+   }
+
+   private void removeRun(Row row, int run)
+   {
+      System.arraycopy(row.starts, run + 1, row.starts, run, row.count - run - 1);
+      System.arraycopy(row.values, run + 1, row.values, run, row.count - run - 1);
+      row.count--;
+      this.runCount--;
+   }
+}
@@ -13,6 +13,6 @@ public class Basket extends Stationary{
     protected void scheduleActions(EventScheduler scheduler,
                                 WorldModel world, ImageStore imageStore)
     {
-        scheduler.scheduleEvent(this, this.createAnimationAction(ATLANTIS_ANIMATION_REPEAT_COUNT), this.getAnimationPeriod());
+        scheduler.scheduleEvent(this, this.createAnimationAction(world, ATLANTIS_ANIMATION_REPEAT_COUNT), this.getAnimationPeriod());
     }
 }
@@ -9,6 +9,12 @@ public class Bear extends Moves{
 
     public static final String QUAKE_KEY = "quake";
 
+    private static PathingStrategy strategy = new NewPathingStrategy();
+
+    public static void setStrategy(PathingStrategy newStrategy){
+        strategy = newStrategy;
+    }
+
     public Bear(String id, Point position, List<PImage> images, int actionPeriod, int animationPeriod)
     {
         super(id, position, images, actionPeriod, animationPeriod);
@@ -16,8 +22,7 @@ public class Bear extends Moves{
 
     protected void executeActivity(WorldModel world,
                                     ImageStore imageStore, EventScheduler scheduler) {
-        Optional<Entity> bearTarget = world.findNearest(
-                getPosition(), MainCollector.class);
+        Optional<Entity> bearTarget = findTarget(world);
         long nextPeriod = getActionPeriod();
 
         if (bearTarget.isPresent()) {
@@ -36,6 +41,11 @@ public class Bear extends Moves{
                 nextPeriod);
     }
 
+    protected Optional<Entity> findTarget(WorldModel world)
+    {
+        return world.findNearest(getPosition(), MainCollector.class);
+    }
+
     protected boolean moveTo(WorldModel world, Entity target, EventScheduler scheduler)
     {
         if (this.getPosition().adjacent(target.getPosition()))
@@ -46,7 +56,7 @@ public class Bear extends Moves{
         }
         else
         {
-            Point nextPos = this.nextPosition(world, target.getPosition());
+            Point nextPos = this.plannedNextPosition(world, target.getPosition());
 
             if (!this.getPosition().equals(nextPos))
             {
@@ -60,13 +70,20 @@ public class Bear extends Moves{
             return false;
         }
     }
+    protected boolean canPlanAhead(){
+        return flowFields == null && strategy.canPlanAhead();
+    }
+
     protected Point nextPosition(WorldModel world,
                                  Point destPos){
-        Predicate<Point> canPassThrough = (point) -> world.withinBounds(point) && !world.isOccupied(point);
+        if (flowFields != null){
+            Optional<Point> step = flowFields.nextStep(MainCollector.class, false, getPosition(), destPos);
+            if (step.isPresent()) return step.get();
+        }
+        Predicate<Point> canPassThrough = passable(world);
         BiPredicate<Point, Point> withinReach = (p1, p2) -> p1.adjacent(p2);
-        PathingStrategy newStrategy = new NewPathingStrategy();
-        List<Point> path =  newStrategy.computePath(this.getPosition(),
-                destPos, canPassThrough, withinReach,PathingStrategy.CARDINAL_NEIGHBORS);
+        List<Point> path =  strategy.computePath(this.getPosition(),
+                destPos, canPassThrough, withinReach, Neighbors.CARDINAL);
         if (path.size()==0) return getPosition();
         return  path.get(0);
     }
@@ -0,0 +1,89 @@
+import java.util.Arrays;
+
+/*
+ChunkedGrid: sparse row/column storage for per-tile world data
+The grid is cut into CHUNK_SIZE x CHUNK_SIZE chunks that only exist once something other
+than the fill value is written into them, and go away again when the last such cell is put
+back to the fill. Untouched areas all read the one shared fill value, so memory follows the
+populated part of the world rather than its total area.
+ */
+
+final class ChunkedGrid<T>
+{
+   public static final int CHUNK_BITS = 6;
+   public static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+   private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+   private final T fill;
+   private final int chunkCols;
+   private final Object[][] chunks;
+   /* cells in each chunk not holding the fill value */
+   private final int[] used;
+   private int allocated;
+
+   public ChunkedGrid(int numRows, int numCols, T fill)
+   {
+      this.fill = fill;
+      this.chunkCols = (numCols + CHUNK_MASK) >> CHUNK_BITS;
+      int chunkRows = (numRows + CHUNK_MASK) >> CHUNK_BITS;
+      this.chunks = new Object[this.chunkCols * chunkRows][];
+      this.used = new int[this.chunks.length];
+   }
+
+   public int getAllocatedChunks()
+   {
+      return allocated;
+   }
+
+   @SuppressWarnings("unchecked")
+   public T get(int x, int y)
+   {
+      Object[] chunk = this.chunks[chunkOf(x, y)];
+      return chunk == null ? this.fill : (T)chunk[cellOf(x, y)];
+   }
+
+   public void set(int x, int y, T value)
+   {
+      int index = chunkOf(x, y);
+      Object[] chunk = this.chunks[index];
+
+      if (chunk == null)
+      {
+         if (value == this.fill)
+         {
+            return;
+         }
+         chunk = new Object[CHUNK_SIZE * CHUNK_SIZE];
+         if (this.fill != null)
+         {
+            Arrays.fill(chunk, this.fill);
+         }
+         this.chunks[index] = chunk;
+         this.allocated++;
+      }
+
+      int cell = cellOf(x, y);
+      boolean wasFill = chunk[cell] == this.fill;
+      chunk[cell] = value;
+
+      if (wasFill && value != this.fill)
+      {
+         this.used[index]++;
+      }
+      else if (!wasFill && value == this.fill && --this.used[index] == 0)
+      {
+         this.chunks[index] = null;
+         this.allocated--;
+      }
+   }
+
+   private int chunkOf(int x, int y)
+   {
+      return (y >> CHUNK_BITS) * this.chunkCols + (x >> CHUNK_BITS);
+   }
+
+   private static int cellOf(int x, int y)
+   {
+      return ((y & CHUNK_MASK) << CHUNK_BITS) | (x & CHUNK_MASK);
+   }
+}
@@ -0,0 +1,10 @@
+/*
+Clock: where the EventScheduler gets its notion of "now" from
+New events are stamped relative to currentTime(), so swapping the clock changes how fast
+(and how reproducibly) the world runs without touching any entity code.
+ */
+
+interface Clock
+{
+   long currentTime();
+}
@@ -0,0 +1,351 @@
+import java.util.*;
+import java.util.function.BiPredicate;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/*
+DStarLitePathingStrategy: incremental search (D* Lite) that keeps its work between calls
+Each search runs backwards from the cells within reach of one goal, so everyone chasing
+the same target shares it, and the mover's start point can change freely between calls.
+Register the strategy with WorldModel.addOccupancyListener: cells that fill up or empty
+out are queued and only the part of each search that depended on them is repaired on the
+next call. Costs and heuristic are the same as AStarPathingStrategy.
+
+An instance assumes it is always asked with the same canPassThrough, withinReach and
+(symmetric) potentialNeighbors, and that canPassThrough only changes when the world
+reports an occupancy change. Searches for goals that stop being asked about are dropped.
+ */
+
+class DStarLitePathingStrategy
+        implements PathingStrategy, OccupancyListener
+{
+    private static final int D = 10;
+    private static final int INF = Integer.MAX_VALUE / 4;
+    private static final int MAX_SEARCHES = 32;
+
+    // access ordered, so the least recently used goal is dropped first
+    private final Map<Point, Search> searches =
+            new LinkedHashMap<Point, Search>(16, 0.75f, true)
+            {
+                protected boolean removeEldestEntry(Map.Entry<Point, Search> eldest)
+                {
+                    return size() > MAX_SEARCHES;
+                }
+            };
+
+    public List<Point> computePath(Point start, Point end,
+                                   Predicate<Point> canPassThrough,
+                                   BiPredicate<Point, Point> withinReach,
+                                   Function<Point, Stream<Point>> potentialNeighbors)
+    {
+        if (withinReach.test(start, end))
+        {
+            return new ArrayList<>();
+        }
+
+        Search search;
+        synchronized (this.searches)
+        {
+            search = this.searches.computeIfAbsent(end,
+                    goal -> new Search(goal, withinReach, potentialNeighbors));
+        }
+        synchronized (search)
+        {
+            return search.run(start, canPassThrough);
+        }
+    }
+
+    // searches repair a shared tree, so what one returns depends on the ones before
+    public boolean canPlanAhead()
+    {
+        return false;
+    }
+
+    public void occupancyChanged(Point pos)
+    {
+        synchronized (this.searches)
+        {
+            for (Search search : this.searches.values())
+            {
+                search.changed(pos);
+            }
+        }
+    }
+
+    private static final class Node
+    {
+        private final Point point;
+        private int g = INF;
+        private int rhs = INF;
+        private boolean goal;
+
+        // key of the live queue entry, if open
+        private boolean open;
+        private int k1;
+        private int k2;
+
+        Node(Point point)
+        {
+            this.point = point;
+        }
+    }
+
+    private static final class Entry
+    {
+        private final Node node;
+        private final int k1;
+        private final int k2;
+
+        Entry(Node node, int k1, int k2)
+        {
+            this.node = node;
+            this.k1 = k1;
+            this.k2 = k2;
+        }
+
+        boolean isLive()
+        {
+            return this.node.open && this.node.k1 == this.k1 && this.node.k2 == this.k2;
+        }
+    }
+
+    private static final Comparator<Entry> ENTRY_ORDER =
+            (a, b) -> a.k1 != b.k1 ? Integer.compare(a.k1, b.k1) : Integer.compare(a.k2, b.k2);
+
+    /*
+       The search tree for one goal
+    */
+    private static final class Search
+    {
+        private final Map<Point, Node> nodes = new HashMap<>();
+        // stale entries are left behind and skipped when they reach the top
+        private final PriorityQueue<Entry> open = new PriorityQueue<>(ENTRY_ORDER);
+        private final Set<Point> changed = new LinkedHashSet<>();
+        private final Function<Point, Stream<Point>> neighbors;
+
+        private Predicate<Point> canPassThrough;
+        private Point last;
+        private int km;
+
+        Search(Point goal, BiPredicate<Point, Point> withinReach,
+               Function<Point, Stream<Point>> neighbors)
+        {
+            this.neighbors = neighbors;
+
+            List<Point> candidates = new ArrayList<>();
+            candidates.add(goal);
+            neighbors.apply(goal).forEach(candidates::add);
+            for (Point point : candidates)
+            {
+                if (withinReach.test(point, goal))
+                {
+                    Node node = node(point);
+                    node.goal = true;
+                    node.rhs = 0;
+                }
+            }
+        }
+
+        synchronized void changed(Point pos)
+        {
+            this.changed.add(pos);
+        }
+
+        List<Point> run(Point start, Predicate<Point> canPassThrough)
+        {
+            this.canPassThrough = canPassThrough;
+
+            if (this.last == null)
+            {
+                this.last = start;
+                for (Node node : this.nodes.values())
+                {
+                    update(node, start);
+                }
+            }
+            else if (!start.equals(this.last))
+            {
+                // keys already queued were made against the old start
+                this.km += heuristic(this.last, start);
+                this.last = start;
+            }
+
+            for (Point pos : this.changed)
+            {
+                // entering pos got cheaper or dearer for each of its neighbours
+                Iterator<Point> preds = this.neighbors.apply(pos).iterator();
+                while (preds.hasNext())
+                {
+                    Node pred = this.nodes.get(preds.next());
+                    if (pred != null)
+                    {
+                        update(pred, start);
+                    }
+                }
+            }
+            this.changed.clear();
+
+            Node startNode = node(start);
+            computeShortestPath(startNode, start);
+            return extractPath(startNode);
+        }
+
+        private void computeShortestPath(Node startNode, Point start)
+        {
+            Entry top;
+            while ((top = top()) != null)
+            {
+                int startK1 = Math.min(startNode.g, startNode.rhs) + this.km;
+                int startK2 = Math.min(startNode.g, startNode.rhs);
+                boolean before = top.k1 < startK1 || (top.k1 == startK1 && top.k2 < startK2);
+                if (!before && startNode.g == startNode.rhs)
+                {
+                    return;
+                }
+
+                this.open.poll();
+                Node u = top.node;
+                int k2 = Math.min(u.g, u.rhs);
+                int k1 = k2 + heuristic(start, u.point) + this.km;
+
+                if (top.k1 < k1 || (top.k1 == k1 && top.k2 < k2))
+                {
+                    push(u, k1, k2);
+                }
+                else if (u.g > u.rhs)
+                {
+                    u.g = u.rhs;
+                    u.open = false;
+                    updatePreds(u, start);
+                }
+                else
+                {
+                    u.g = INF;
+                    update(u, start);
+                    updatePreds(u, start);
+                }
+            }
+        }
+
+        private List<Point> extractPath(Node startNode)
+        {
+            List<Point> path = new ArrayList<>();
+            if (startNode.g >= INF)
+            {
+                return path;
+            }
+
+            Node current = startNode;
+            while (!current.goal)
+            {
+                Node best = null;
+                int bestCost = INF;
+                Iterator<Point> succs = this.neighbors.apply(current.point).iterator();
+                while (succs.hasNext())
+                {
+                    Point next = succs.next();
+                    Node node = this.nodes.get(next);
+                    if (node != null)
+                    {
+                        int cost = add(cost(current.point, next), node.g);
+                        if (cost < bestCost)
+                        {
+                            best = node;
+                            bestCost = cost;
+                        }
+                    }
+                }
+
+                // a dead end or a loop means the tree is not settled here yet
+                if (best == null || path.size() > this.nodes.size())
+                {
+                    return new ArrayList<>();
+                }
+                path.add(best.point);
+                current = best;
+            }
+            return path;
+        }
+
+        private void updatePreds(Node u, Point start)
+        {
+            Iterator<Point> preds = this.neighbors.apply(u.point).iterator();
+            while (preds.hasNext())
+            {
+                update(node(preds.next()), start);
+            }
+        }
+
+        private void update(Node u, Point start)
+        {
+            if (!u.goal)
+            {
+                int rhs = INF;
+                Iterator<Point> succs = this.neighbors.apply(u.point).iterator();
+                while (succs.hasNext())
+                {
+                    Point next = succs.next();
+                    Node node = this.nodes.get(next);
+                    if (node != null && node.g < INF)
+                    {
+                        rhs = Math.min(rhs, add(cost(u.point, next), node.g));
+                    }
+                }
+                u.rhs = rhs;
+            }
+
+            if (u.g != u.rhs)
+            {
+                int k2 = Math.min(u.g, u.rhs);
+                int k1 = k2 + heuristic(start, u.point) + this.km;
+                if (!u.open || u.k1 != k1 || u.k2 != k2)
+                {
+                    push(u, k1, k2);
+                }
+            }
+            else
+            {
+                u.open = false;
+            }
+        }
+
+        private void push(Node u, int k1, int k2)
+        {
+            u.open = true;
+            u.k1 = k1;
+            u.k2 = k2;
+            this.open.add(new Entry(u, k1, k2));
+        }
+
+        private Entry top()
+        {
+            Entry top;
+            while ((top = this.open.peek()) != null && !top.isLive())
+            {
+                this.open.poll();
+            }
+            return top;
+        }
+
+        private Node node(Point point)
+        {
+            return this.nodes.computeIfAbsent(point, Node::new);
+        }
+
+        private int cost(Point from, Point to)
+        {
+            return this.canPassThrough.test(to) ? heuristic(from, to) : INF;
+        }
+    }
+
+    private static int heuristic(Point a, Point b)
+    {
+        return D * (Math.abs(a.x - b.x) + Math.abs(a.y - b.y));
+    }
+
+    private static int add(int a, int b)
+    {
+        return Math.min(INF, a + b);
+    }
+}
@@ -0,0 +1,37 @@
+/*
+DiscreteClock: virtual time that only moves when told to
+Lets the scheduler jump straight to the next event instead of idling, and makes runs
+reproducible since nothing depends on the real time.
+ */
+
+final class DiscreteClock
+   implements Clock
+{
+   private long time;
+
+   public DiscreteClock()
+   {
+      this(0);
+   }
+
+   public DiscreteClock(long start)
+   {
+      this.time = start;
+   }
+
+   public long currentTime()
+   {
+      return this.time;
+   }
+
+   /* moves the clock forward to the given time */
+   public void advanceTo(long time)
+   {
+      if (time < this.time)
+      {
+         throw new IllegalArgumentException(String.format(
+            "cannot move clock back from %d to %d", this.time, time));
+      }
+      this.time = time;
+   }
+}
@@ -3,12 +3,19 @@ final class Event
    private Action action;
    private long time;
    private Entity entity;
+   private long sequence;
+   private EventHandle handle;
+   private int generation;
 
-   public Event(Action action, long time, Entity entity)
+   public Event(Action action, long time, Entity entity, long sequence,
+                EventHandle handle)
    {
       this.action = action;
       this.time = time;
       this.entity = entity;
+      this.sequence = sequence;
+      this.handle = handle;
+      this.generation = handle.getGeneration();
    }
 
    public Action getAction() {
@@ -22,4 +29,18 @@ final class Event
    public Entity getEntity() {
       return entity;
    }
+
+   /* order the event was scheduled in, breaks ties between equal times */
+   public long getSequence() {
+      return sequence;
+   }
+
+   public EventHandle getHandle() {
+      return handle;
+   }
+
+   /* cancelled events stay queued as tombstones until polled or compacted */
+   public boolean isCancelled() {
+      return generation != handle.getGeneration();
+   }
 }
@@ -5,6 +5,11 @@ final class EventComparator
 {
    public int compare(Event lft, Event rht)
    {
-      return (int)(lft.getTime() - rht.getTime());
+      int byTime = Long.compare(lft.getTime(), rht.getTime());
+      if (byTime != 0)
+      {
+         return byTime;
+      }
+      return Long.compare(lft.getSequence(), rht.getSequence());
    }
 }
@@ -0,0 +1,40 @@
+/*
+EventHandle: the EventScheduler's bookkeeping for one entity's pending events
+Every event remembers the generation of its handle when it was scheduled. Bumping the
+generation cancels all of them at once; the queue drops them later when they come up.
+ */
+
+final class EventHandle
+{
+   private int generation;
+   private int pending;
+
+   public int getGeneration()
+   {
+      return generation;
+   }
+
+   public int getPending()
+   {
+      return pending;
+   }
+
+   public void eventAdded()
+   {
+      this.pending++;
+   }
+
+   public void eventRemoved()
+   {
+      this.pending--;
+   }
+
+   /* returns how many events were cancelled */
+   public int cancelAll()
+   {
+      int cancelled = this.pending;
+      this.generation++;
+      this.pending = 0;
+      return cancelled;
+   }
+}
@@ -0,0 +1,34 @@
+import java.util.function.Consumer;
+
+/*
+EventQueue: the storage behind the EventScheduler
+Events must come out in EventComparator order (time, then the order they were scheduled).
+Cancelled events may still be returned; the scheduler skips them.
+ */
+
+interface EventQueue
+{
+   void add(Event event);
+
+   /* drops every cancelled event still held */
+   void compact();
+
+   /*
+      Removes and returns the earliest event whose time is strictly before
+      the given time, or null if there is none
+   */
+   Event pollBefore(long time);
+
+   /* earliest event (cancelled or not) without removing it, or null when empty */
+   Event peek();
+
+   int size();
+
+   /* every event held, cancelled or not, in no particular order */
+   void forEach(Consumer<Event> visitor);
+
+   default boolean isEmpty()
+   {
+      return size() == 0;
+   }
+}
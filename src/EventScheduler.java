@@ -1,4 +1,5 @@
 import java.util.*;
+import java.util.function.Consumer;
 
 /*
 EventScheduler: ideally our way of controlling what happens in our virtual world
@@ -6,63 +7,263 @@ EventScheduler: ideally our way of controlling what happens in our virtual world
 
 final class EventScheduler
 {
-   private PriorityQueue<Event> eventQueue;
-   private Map<Entity, List<Event>> pendingEvents;
-   private double timeScale;
+   /* compact once tombstones outnumber live events, but not for tiny queues */
+   private static final int COMPACT_MIN_CANCELLED = 1024;
+
+   private EventQueue eventQueue;
+   private Map<Entity, EventHandle> handles;
+   private Clock clock;
+   private long nextSequence;
+   private int cancelledCount;
+   // one per update; "this tick" for caches and budgets, whatever the clock does meanwhile
+   private long updateCount;
+
+   private PathPlanner planner;
+   // set when an event lands inside the batch currently being run
+   private long batchLimit = Long.MIN_VALUE;
+   private boolean batchInterrupted;
 
    public EventScheduler(double timeScale)
    {
-      this.eventQueue = new PriorityQueue<>(new EventComparator());
-      this.pendingEvents = new HashMap<>();
-      this.timeScale = timeScale;
+      this(new ScaledClock(timeScale));
+   }
+
+   public EventScheduler(Clock clock)
+   {
+      this(clock, new HeapEventQueue());
+   }
+
+   public EventScheduler(Clock clock, EventQueue eventQueue)
+   {
+      this.eventQueue = eventQueue;
+      this.handles = new HashMap<>();
+      this.clock = clock;
+   }
+
+   public Clock getClock()
+   {
+      return clock;
    }
+
+   /* with a planner, due movers search their paths in parallel before each batch runs */
+   public void setPlanner(PathPlanner planner)
+   {
+      this.planner = planner;
+   }
+
+   /* how many updates have started; work done within one update sees the same count */
+   public long getUpdateCount()
+   {
+      return updateCount;
+   }
+
+   public int getPendingCount()
+   {
+      return this.eventQueue.size() - this.cancelledCount;
+   }
+
+   /* every event still to run, in no particular order */
+   public void forEachPendingEvent(Consumer<Event> visitor)
+   {
+      this.eventQueue.forEach(event -> {
+         if (!event.isCancelled())
+         {
+            visitor.accept(event);
+         }
+      });
+   }
+
+   /* sequence number the next scheduled event gets */
+   public long getNextSequence()
+   {
+      return nextSequence;
+   }
+
+   public void setNextSequence(long nextSequence)
+   {
+      this.nextSequence = Math.max(this.nextSequence, nextSequence);
+   }
+
+   /*
+      Puts back an event saved in a snapshot with its own time and sequence,
+      so restored events run in the order they had
+   */
+   public void restoreEvent(ActiveEntity entity, Action action, long time, long sequence)
+   {
+      EventHandle handle = this.handles.get(entity);
+      if (handle == null)
+      {
+         handle = new EventHandle();
+         this.handles.put(entity, handle);
+      }
+      handle.eventAdded();
+
+      this.eventQueue.add(new Event(action, time, entity, sequence, handle));
+      setNextSequence(sequence + 1);
+   }
+
    public void scheduleEvent(ActiveEntity entity, Action action, long afterPeriod)
    {
-      long time = System.currentTimeMillis() +
-              (long)(afterPeriod * this.timeScale);
-      Event event = new Event(action, time, entity);
+      long time = this.clock.currentTime() + afterPeriod;
 
-      this.eventQueue.add(event);
+      // update the pending events for the given entity
+      EventHandle handle = this.handles.get(entity);
+      if (handle == null)
+      {
+         handle = new EventHandle();
+         this.handles.put(entity, handle);
+      }
+      handle.eventAdded();
 
-      // update list of pending events for the given entity
-      List<Event> pending = this.pendingEvents.getOrDefault(entity,
-              new LinkedList<>());
-      pending.add(event);
-      this.pendingEvents.put(entity, pending);
+      this.eventQueue.add(new Event(action, time, entity, this.nextSequence++, handle));
+      if (time < this.batchLimit)
+      {
+         this.batchInterrupted = true;
+      }
    }
 
+   /*
+      Constant time: the entity's events are only marked cancelled here and
+      are dropped when they reach the front of the queue (or on compaction)
+   */
    public void unscheduleAllEvents(Entity entity)
    {
-      List<Event> pending = this.pendingEvents.remove(entity);
+      EventHandle handle = this.handles.remove(entity);
 
-      if (pending != null)
+      if (handle != null)
       {
-         for (Event event : pending)
+         this.cancelledCount += handle.cancelAll();
+
+         // a batch being run is out of the queue, and compacting would
+         // forget the tombstones it still holds
+         if (this.batchLimit == Long.MIN_VALUE &&
+                 this.cancelledCount > COMPACT_MIN_CANCELLED &&
+                 this.cancelledCount > this.eventQueue.size() / 2)
          {
-            this.eventQueue.remove(event);
+            this.eventQueue.compact();
+            this.cancelledCount = 0;
          }
       }
    }
 
    public void removePendingEvent(Event event)
    {
-      List<Event> pending = this.pendingEvents.get(event.getEntity());
+      event.getHandle().eventRemoved();
+   }
+
+   /*
+      Runs everything that is due according to the scheduler's own clock
+   */
+   public void update()
+   {
+      updateOnTime(this.clock.currentTime());
+   }
+
+   public void updateOnTime(long time)
+   {
+      this.updateCount++;
+      if (this.planner != null)
+      {
+         updateInBatches(time);
+         return;
+      }
 
-      if (pending != null)
+      Event next;
+      while ((next = this.eventQueue.pollBefore(time)) != null)
       {
-         pending.remove(event);
+         fire(next);
       }
    }
-   public void updateOnTime(long time)
+
+   /*
+      Takes everything due out of the queue, lets the planner work on it, then
+      runs it in order.  If running it schedules something that is itself due
+      before time, the rest of the batch goes back into the queue so the new
+      event runs in its proper place.
+   */
+   private void updateInBatches(long time)
+   {
+      List<Event> batch = new ArrayList<>();
+      Event next;
+
+      while ((next = this.eventQueue.pollBefore(time)) != null)
+      {
+         batch.clear();
+         do
+         {
+            batch.add(next);
+         }
+         while ((next = this.eventQueue.pollBefore(time)) != null);
+
+         this.planner.plan(batch);
+
+         this.batchLimit = time;
+         this.batchInterrupted = false;
+         for (int i = 0; i < batch.size(); i++)
+         {
+            if (this.batchInterrupted)
+            {
+               for (Event waiting : batch.subList(i, batch.size()))
+               {
+                  this.eventQueue.add(waiting);
+               }
+               break;
+            }
+            fire(batch.get(i));
+         }
+         this.batchLimit = Long.MIN_VALUE;
+      }
+   }
+
+   private void fire(Event next)
+   {
+      if (next.isCancelled())
+      {
+         this.cancelledCount--;
+         return;
+      }
+
+      removePendingEvent(next);
+
+      next.getAction().executeAction(this);
+
+      // forget entities that did not schedule anything new
+      EventHandle handle = next.getHandle();
+      if (handle.getPending() == 0)
+      {
+         this.handles.remove(next.getEntity(), handle);
+      }
+   }
+
+   /*
+      Moves the clock straight to the time of the earliest pending event and
+      runs every event due at that time.  Returns false when nothing is left
+      to run.  Only a scheduler on a DiscreteClock can jump ahead, so that
+      clock is passed in; it must be the one the scheduler was built with.
+   */
+   public boolean advanceToNextEvent(DiscreteClock clock)
    {
-      while (!this.eventQueue.isEmpty() &&
-              this.eventQueue.peek().getTime() < time)
+      if (clock != this.clock)
       {
-         Event next = this.eventQueue.poll();
+         throw new IllegalArgumentException("not this scheduler's clock");
+      }
 
-         removePendingEvent(next);
+      Event next = this.eventQueue.peek();
+      while (next != null && next.isCancelled())
+      {
+         this.eventQueue.pollBefore(next.getTime() + 1);
+         this.cancelledCount--;
+         next = this.eventQueue.peek();
+      }
 
-         next.getAction().executeAction(this);
+      if (next == null)
+      {
+         return false;
       }
+
+      long time = next.getTime();
+      clock.advanceTo(Math.max(time, clock.currentTime()));
+      updateOnTime(time + 1);
+      return true;
    }
 }
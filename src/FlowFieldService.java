@@ -0,0 +1,262 @@
+import java.util.*;
+
+/*
+FlowFieldService: shared distance maps towards every entity of one kind
+One multi-source Dijkstra per goal kind fills in, for each free cell, the cost of the
+cheapest walk to a cell next to a goal and which goal that walk ends at. Any number of
+movers then read their next step and their goal from it by looking at their neighbours.
+Costs are the same as the pathing strategies: 10 per cardinal step, 20 per diagonal.
+
+Fields are recomputed lazily: an occupancy change only marks them stale, and a stale field
+is rebuilt the next time it is read in a later scheduler update (or when its goals are
+gone), so movers taking turns within one update share a single rebuild however far a real
+time clock moves meanwhile. Steps are always
+checked against the live occupancy grid, so a slightly stale field never moves anyone into
+an occupied cell.
+
+A field floods everything reachable, so it is dense: an int and a reference per cell.
+Worlds of more than MAX_CELLS cells are refused (see fits) and their movers keep to the
+pathing strategies.
+ */
+
+final class FlowFieldService
+   implements OccupancyListener
+{
+   public static final long MAX_CELLS = 1L << 21;
+   private static final int D = 10;
+   private static final int UNREACHABLE = Integer.MAX_VALUE;
+
+   private static final int[][] CARDINAL = {{0, -1}, {0, 1}, {-1, 0}, {1, 0}};
+   private static final int[][] DIAGONAL_CARDINAL = {
+      {-1, -1}, {1, 1}, {-1, 1}, {1, -1}, {0, -1}, {0, 1}, {-1, 0}, {1, 0}};
+
+   private WorldModel world;
+   private EventScheduler scheduler;
+   private int numRows;
+   private int numCols;
+   private Map<Class<?>, Field> cardinalFields;
+   private Map<Class<?>, Field> diagonalFields;
+   private long version;
+   private long rebuilds;
+
+   public FlowFieldService(WorldModel world, EventScheduler scheduler)
+   {
+      if (!fits(world))
+      {
+         throw new IllegalArgumentException(String.format(
+            "flow fields need a world of at most %d cells", MAX_CELLS));
+      }
+      this.world = world;
+      this.scheduler = scheduler;
+      this.numRows = world.getNumRows();
+      this.numCols = world.getNumCols();
+      this.cardinalFields = new HashMap<>();
+      this.diagonalFields = new HashMap<>();
+      world.addOccupancyListener(this);
+   }
+
+   /* whether a world is small enough to have flow fields at all */
+   public static boolean fits(WorldModel world)
+   {
+      return (long)world.getNumRows() * world.getNumCols() <= MAX_CELLS;
+   }
+
+   public long getRebuilds()
+   {
+      return rebuilds;
+   }
+
+   public synchronized void occupancyChanged(Point pos)
+   {
+      this.version++;
+   }
+
+   /*
+      The free neighbour of from that lies on a cheapest walk to goal, if the
+      field leads from there to that goal at all
+   */
+   public synchronized Optional<Point> nextStep(Class<?> kind, boolean diagonal,
+      Point from, Point goal)
+   {
+      Field field = field(kind, diagonal);
+      int cell = field.bestNeighbor(from);
+      if (cell < 0 || !field.goals[cell].getPosition().equals(goal))
+      {
+         return Optional.empty();
+      }
+      return Optional.of(pointOf(cell));
+   }
+
+   /*
+      The goal a mover at from is closest to by walking, which is not
+      always the closest one as the crow flies
+   */
+   public synchronized Optional<Entity> goalFrom(Class<?> kind, boolean diagonal,
+      Point from)
+   {
+      for (int[] offset : CARDINAL)
+      {
+         Optional<Entity> occupant = this.world.getOccupant(
+            new Point(from.x + offset[0], from.y + offset[1]));
+         if (occupant.isPresent() && occupant.get().getClass() == kind)
+         {
+            return occupant;
+         }
+      }
+
+      Field field = field(kind, diagonal);
+      int cell = field.bestNeighbor(from);
+      return cell < 0 ? Optional.empty() : Optional.of(field.goals[cell]);
+   }
+
+   private Field field(Class<?> kind, boolean diagonal)
+   {
+      Map<Class<?>, Field> fields = diagonal ? this.diagonalFields : this.cardinalFields;
+      Field field = fields.computeIfAbsent(kind,
+         k -> new Field(k, diagonal ? DIAGONAL_CARDINAL : CARDINAL));
+
+      long update = this.scheduler.getUpdateCount();
+      if (!field.built || (field.version != this.version
+         && (field.builtIn != update || field.lostGoal())))
+      {
+         field.build(update);
+      }
+      return field;
+   }
+
+   private boolean passable(int x, int y)
+   {
+      return x >= 0 && x < this.numCols && y >= 0 && y < this.numRows
+         && !this.world.isOccupied(new Point(x, y));
+   }
+
+   private Point pointOf(int cell)
+   {
+      return new Point(cell % this.numCols, cell / this.numCols);
+   }
+
+   private final class Field
+   {
+      private final Class<?> kind;
+      private final int[][] offsets;
+      private final int[] distance;
+      private final Entity[] goals;
+      private final List<Entity> sources;
+      private boolean built;
+      private long builtIn;
+      private long version;
+
+      Field(Class<?> kind, int[][] offsets)
+      {
+         this.kind = kind;
+         this.offsets = offsets;
+         this.distance = new int[numRows * numCols];
+         this.goals = new Entity[numRows * numCols];
+         this.sources = new ArrayList<>();
+      }
+
+      void build(long update)
+      {
+         Arrays.fill(this.distance, UNREACHABLE);
+         Arrays.fill(this.goals, null);
+         this.sources.clear();
+
+         /* entries are distance << 32 | cell, so ties settle the lower cell first */
+         PriorityQueue<Long> open = new PriorityQueue<>();
+         for (Entity goal : world.getEntitiesOfType(this.kind))
+         {
+            this.sources.add(goal);
+            Point pos = goal.getPosition();
+            for (int[] offset : CARDINAL)
+            {
+               int x = pos.x + offset[0];
+               int y = pos.y + offset[1];
+               int cell = y * numCols + x;
+               if (passable(x, y) && this.distance[cell] != 0)
+               {
+                  this.distance[cell] = 0;
+                  this.goals[cell] = goal;
+                  open.add((long)cell);
+               }
+            }
+         }
+
+         Long entry;
+         while ((entry = open.poll()) != null)
+         {
+            int cell = (int)(long)entry;
+            int dist = (int)(entry >>> 32);
+            if (dist != this.distance[cell])
+            {
+               continue;
+            }
+
+            int cx = cell % numCols;
+            int cy = cell / numCols;
+            for (int[] offset : this.offsets)
+            {
+               int x = cx + offset[0];
+               int y = cy + offset[1];
+               if (!passable(x, y))
+               {
+                  continue;
+               }
+               int next = y * numCols + x;
+               int nextDist = dist + D * (Math.abs(offset[0]) + Math.abs(offset[1]));
+               if (nextDist < this.distance[next])
+               {
+                  this.distance[next] = nextDist;
+                  this.goals[next] = this.goals[cell];
+                  open.add((long)nextDist << 32 | next);
+               }
+            }
+         }
+
+         this.built = true;
+         this.builtIn = update;
+         this.version = FlowFieldService.this.version;
+         rebuilds++;
+      }
+
+      /* a goal that has left the world would send movers nowhere */
+      boolean lostGoal()
+      {
+         for (Entity goal : this.sources)
+         {
+            if (!world.getEntities().contains(goal))
+            {
+               return true;
+            }
+         }
+         return false;
+      }
+
+      /* cheapest free neighbour of from, or -1 */
+      int bestNeighbor(Point from)
+      {
+         int best = -1;
+         int bestCost = UNREACHABLE;
+         for (int[] offset : this.offsets)
+         {
+            int x = from.x + offset[0];
+            int y = from.y + offset[1];
+            if (!passable(x, y))
+            {
+               continue;
+            }
+            int cell = y * numCols + x;
+            if (this.distance[cell] == UNREACHABLE)
+            {
+               continue;
+            }
+            int cost = this.distance[cell] + D * (Math.abs(offset[0]) + Math.abs(offset[1]));
+            if (cost < bestCost)
+            {
+               best = cell;
+               bestCost = cost;
+            }
+         }
+         return best;
+      }
+   }
+}
@@ -10,6 +10,15 @@ public class Fruit extends AnimatedEntity{
     public static final int BEAR_ANIMATION_MIN = 50;
     public static final int BEAR_ANIMATION_MAX = 150;
     
+    // bears spawned so far, kept in world snapshots
+    public static int getBearCount() {
+        return bear_count;
+    }
+
+    public static void setBearCount(int count) {
+        bear_count = count;
+    }
+
     public Fruit(String id, Point position,
                  List<PImage> images, int actionPeriod, int animationPeriod)
     {
@@ -1,5 +1,4 @@
-import java.util.Random;
-
 public class Functions {
-    public static final Random rand = new Random();
+    // restorable, so a WorldSnapshot can save and restore where it is
+    public static final RestorableRandom rand = new RestorableRandom();
 }
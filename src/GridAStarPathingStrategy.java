@@ -0,0 +1,305 @@
+import java.util.*;
+import java.util.function.BiPredicate;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/*
+GridAStarPathingStrategy: A* over cell indices (y * numCols + x) instead of Point objects
+g-scores, parents and heap positions live in int arrays sized to the grid and reused between
+searches (a search stamp marks which entries are current, so nothing is cleared). The open
+list is an indexed binary heap with a real decrease-key. Costs and heuristic are the same as
+AStarPathingStrategy: 10 per cardinal step, 20 per diagonal, manhattan distance * 10.
+
+Each thread gets its own scratch arrays, so one instance can be shared by searches running
+in parallel. The Point of each cell is made the first time a search needs it and shared
+from then on, so given Neighbors instead of a stream function, a search allocates nothing
+but the returned path once the cells it reaches have their Points. The arrays are dense,
+eight ints per cell per thread plus the shared Points, so grids of more than MAX_CELLS cells
+are refused (see fits); sparse worlds that big keep to the other strategies.
+ */
+
+class GridAStarPathingStrategy
+        implements PathingStrategy
+{
+    public static final long MAX_CELLS = 1L << 21;
+    private static final int D = 10;
+
+    private final int numRows;
+    private final int numCols;
+
+    // Points are immutable, so threads racing to fill a cell end up with equal values
+    private final Point[] points;
+    private final ThreadLocal<Search> searches;
+
+    public GridAStarPathingStrategy(int numRows, int numCols)
+    {
+        if (!fits(numRows, numCols))
+        {
+            throw new IllegalArgumentException(String.format(
+                    "grid A* needs a grid of at most %d cells", MAX_CELLS));
+        }
+        this.numRows = numRows;
+        this.numCols = numCols;
+        this.points = new Point[numRows * numCols];
+        this.searches = ThreadLocal.withInitial(Search::new);
+    }
+
+    /* whether a grid is small enough for the dense scratch arrays */
+    public static boolean fits(int numRows, int numCols)
+    {
+        return (long)numRows * numCols <= MAX_CELLS;
+    }
+
+    public List<Point> computePath(Point start, Point end,
+                                   Predicate<Point> canPassThrough,
+                                   BiPredicate<Point, Point> withinReach,
+                                   Function<Point, Stream<Point>> potentialNeighbors)
+    {
+        return computePath(start, end, canPassThrough, withinReach,
+                Neighbors.of(potentialNeighbors));
+    }
+
+    public List<Point> computePath(Point start, Point end,
+                                   Predicate<Point> canPassThrough,
+                                   BiPredicate<Point, Point> withinReach,
+                                   Neighbors neighbors)
+    {
+        return this.searches.get().run(start, end, canPassThrough, withinReach, neighbors);
+    }
+
+    private boolean inGrid(int x, int y)
+    {
+        return x >= 0 && x < this.numCols && y >= 0 && y < this.numRows;
+    }
+
+    private int cellOf(int x, int y)
+    {
+        return y * this.numCols + x;
+    }
+
+    private Point pointOf(int cell)
+    {
+        Point point = this.points[cell];
+        if (point == null)
+        {
+            point = new Point(cell % this.numCols, cell / this.numCols);
+            this.points[cell] = point;
+        }
+        return point;
+    }
+
+    /*
+       Scratch state for the searches of one thread
+    */
+    private final class Search
+            implements Neighbors.Visitor
+    {
+        private final int[] g;
+        private final int[] f;
+        private final int[] h;
+        private final int[] parent;
+        private final int[] seenStamp;
+        private final int[] closedStamp;
+        private int stamp;
+
+        // open list: heap of cell indices, heapIndex[cell] is its position in the heap
+        private final int[] heap;
+        private final int[] heapIndex;
+        private int heapSize;
+
+        // the running search, for visit()
+        private int current;
+        private Point end;
+        private Predicate<Point> canPassThrough;
+
+        Search()
+        {
+            int cells = numRows * numCols;
+            this.g = new int[cells];
+            this.f = new int[cells];
+            this.h = new int[cells];
+            this.parent = new int[cells];
+            this.seenStamp = new int[cells];
+            this.closedStamp = new int[cells];
+            this.heap = new int[cells];
+            this.heapIndex = new int[cells];
+        }
+
+        List<Point> run(Point start, Point end,
+                        Predicate<Point> canPassThrough,
+                        BiPredicate<Point, Point> withinReach,
+                        Neighbors neighbors)
+        {
+            if (!inGrid(start.x, start.y))
+            {
+                return new ArrayList<>();
+            }
+            this.end = end;
+            this.canPassThrough = canPassThrough;
+
+            nextStamp();
+            this.heapSize = 0;
+
+            int startCell = cellOf(start.x, start.y);
+            open(startCell, -1, 0, heuristic(start.x, start.y, end));
+
+            while (this.heapSize > 0)
+            {
+                int current = pollMin();
+                Point currentPoint = pointOf(current);
+
+                // reached goal!
+                if (withinReach.test(currentPoint, end))
+                {
+                    return buildPath(current, startCell);
+                }
+                this.closedStamp[current] = this.stamp;
+
+                this.current = current;
+                neighbors.forEach(currentPoint.x, currentPoint.y, this);
+            }
+            return new ArrayList<>();
+        }
+
+        public void visit(int x, int y)
+        {
+            if (!inGrid(x, y))
+            {
+                return;
+            }
+
+            int cell = cellOf(x, y);
+            if (this.closedStamp[cell] == this.stamp || !this.canPassThrough.test(pointOf(cell)))
+            {
+                return;
+            }
+
+            int stepCost = D * (Math.abs(x - this.current % numCols) +
+                    Math.abs(y - this.current / numCols));
+            int newG = this.g[this.current] + stepCost;
+
+            if (this.seenStamp[cell] != this.stamp)
+            {
+                open(cell, this.current, newG, heuristic(x, y, this.end));
+            }
+            else if (newG < this.g[cell])
+            {
+                // decrease-key: the cell is still in the heap, just sift it up
+                this.g[cell] = newG;
+                this.f[cell] = newG + this.h[cell];
+                this.parent[cell] = this.current;
+                siftUp(this.heapIndex[cell]);
+            }
+        }
+
+        private void open(int cell, int from, int cellG, int cellH)
+        {
+            this.seenStamp[cell] = this.stamp;
+            this.g[cell] = cellG;
+            this.h[cell] = cellH;
+            this.f[cell] = cellG + cellH;
+            this.parent[cell] = from;
+
+            this.heap[this.heapSize] = cell;
+            this.heapIndex[cell] = this.heapSize;
+            this.heapSize++;
+            siftUp(this.heapSize - 1);
+        }
+
+        private List<Point> buildPath(int goal, int startCell)
+        {
+            int length = 0;
+            for (int cell = goal; cell != startCell; cell = this.parent[cell])
+            {
+                length++;
+            }
+
+            Point[] path = new Point[length];
+            int i = length;
+            for (int cell = goal; cell != startCell; cell = this.parent[cell])
+            {
+                path[--i] = pointOf(cell);
+            }
+            return new ArrayList<>(Arrays.asList(path));
+        }
+
+        private int pollMin()
+        {
+            int min = this.heap[0];
+            this.heapSize--;
+            if (this.heapSize > 0)
+            {
+                this.heap[0] = this.heap[this.heapSize];
+                this.heapIndex[this.heap[0]] = 0;
+                siftDown(0);
+            }
+            return min;
+        }
+
+        private void siftUp(int index)
+        {
+            int cell = this.heap[index];
+            while (index > 0)
+            {
+                int parentIndex = (index - 1) >>> 1;
+                int above = this.heap[parentIndex];
+                if (!less(cell, above))
+                {
+                    break;
+                }
+                this.heap[index] = above;
+                this.heapIndex[above] = index;
+                index = parentIndex;
+            }
+            this.heap[index] = cell;
+            this.heapIndex[cell] = index;
+        }
+
+        private void siftDown(int index)
+        {
+            int cell = this.heap[index];
+            int half = this.heapSize >>> 1;
+            while (index < half)
+            {
+                int child = 2 * index + 1;
+                int right = child + 1;
+                if (right < this.heapSize && less(this.heap[right], this.heap[child]))
+                {
+                    child = right;
+                }
+                if (!less(this.heap[child], cell))
+                {
+                    break;
+                }
+                this.heap[index] = this.heap[child];
+                this.heapIndex[this.heap[index]] = index;
+                index = child;
+            }
+            this.heap[index] = cell;
+            this.heapIndex[cell] = index;
+        }
+
+        // lowest f first, ties broken towards the goal
+        private boolean less(int a, int b)
+        {
+            return this.f[a] < this.f[b] || (this.f[a] == this.f[b] && this.h[a] < this.h[b]);
+        }
+
+        private void nextStamp()
+        {
+            this.stamp++;
+            if (this.stamp == Integer.MAX_VALUE)
+            {
+                Arrays.fill(this.seenStamp, 0);
+                Arrays.fill(this.closedStamp, 0);
+                this.stamp = 1;
+            }
+        }
+
+        private int heuristic(int x, int y, Point end)
+        {
+            return D * (Math.abs(x - end.x) + Math.abs(y - end.y));
+        }
+    }
+}
@@ -0,0 +1,356 @@
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import processing.core.PConstants;
+import processing.core.PImage;
+
+/*
+HeadlessSimulation runs the world without a Processing window
+It loads the same world file as VirtualWorld but advances the EventScheduler on a virtual
+clock, one TIMER_ACTION_PERIOD per tick, as fast as the CPU allows. Useful for soak testing
+and tuning the AI without a display.
+
+   java HeadlessSimulation [-ticks N] [-clicks N] [-seed S] [-size COLS ROWS] [-jump] [-wheel]
+      [-gridpath] [-dstar] [-flowfield] [-jps] [-bounded] [-parallel]
+      [-save SNAPSHOT] [-resume SNAPSHOT] [world file]
+
+-size runs the world file inside a world of the given size (the display's by default);
+tile storage is sparse, so a huge mostly empty world costs little memory. -gridpath and
+-flowfield keep dense per-cell arrays and are ignored above their size limits.
+
+With -jump the clock skips straight from one event to the next instead of stepping
+a tick at a time; -ticks then bounds the simulated time (ticks * TIMER_ACTION_PERIOD).
+-wheel schedules on a TimingWheelEventQueue instead of the default heap.
+-gridpath moves helpers with GridAStarPathingStrategy (worlds of at most
+GridAStarPathingStrategy.MAX_CELLS cells).
+-dstar moves helpers with DStarLitePathingStrategy, fed by the world's occupancy changes.
+-flowfield sends full helpers and the bear along shared FlowFieldService distance maps
+(worlds of at most FlowFieldService.MAX_CELLS cells).
+-jps sends foraging helpers (HelperNotFull) along JumpPointPathingStrategy.
+-bounded caps every search (and each tick's searches) with SearchLimits and skips goals
+already proven unreachable.
+-gridpath, -dstar and -bounded each choose the helpers' strategy; only one may be given.
+-save writes a WorldSnapshot once the run is over; -resume starts from one instead of the
+world file (with the same -size), carrying on exactly where the saved run stopped.
+-parallel plans the paths of all movers due in a tick on the common ForkJoinPool first; a
+plan is only used if nothing it relied on has changed by the mover's turn, so results are
+the same as without it. D* and flow field movers are not planned ahead.
+ */
+
+final class HeadlessSimulation
+{
+   public static final int DEFAULT_TICKS = 100000;
+   public static final String TICKS_FLAG = "-ticks";
+   public static final String CLICKS_FLAG = "-clicks";
+   public static final String SEED_FLAG = "-seed";
+   public static final String JUMP_FLAG = "-jump";
+   public static final String WHEEL_FLAG = "-wheel";
+   public static final String SIZE_FLAG = "-size";
+   public static final String SAVE_FLAG = "-save";
+   public static final String RESUME_FLAG = "-resume";
+
+   private static final String LEAVES_KEY = "leaves";
+
+   private ImageStore imageStore;
+   private WorldModel world;
+   private EventScheduler scheduler;
+   private DiscreteClock clock;
+
+   private long ticks;
+
+   public HeadlessSimulation()
+   {
+      this(false);
+   }
+
+   public HeadlessSimulation(boolean timingWheel)
+   {
+      this(timingWheel, VirtualWorld.WORLD_ROWS, VirtualWorld.WORLD_COLS);
+   }
+
+   public HeadlessSimulation(boolean timingWheel, int numRows, int numCols)
+   {
+      /* no images are loaded headless, every key falls back to this one */
+      PImage blank = new PImage(VirtualWorld.TILE_WIDTH,
+         VirtualWorld.TILE_HEIGHT, PConstants.RGB);
+      this.imageStore = new ImageStore(blank);
+      this.world = new WorldModel(numRows, numCols,
+         new Background(VirtualWorld.DEFAULT_IMAGE_NAME,
+            imageStore.getImageList(VirtualWorld.DEFAULT_IMAGE_NAME)));
+      this.clock = new DiscreteClock();
+      this.scheduler = timingWheel
+         ? new EventScheduler(clock, new TimingWheelEventQueue(clock.currentTime()))
+         : new EventScheduler(clock);
+   }
+
+   public WorldModel getWorld()
+   {
+      return world;
+   }
+
+   public EventScheduler getScheduler()
+   {
+      return scheduler;
+   }
+
+   public long getVirtualTime()
+   {
+      return clock.currentTime();
+   }
+
+   public long getTicks()
+   {
+      return ticks;
+   }
+
+   public void load(String filename) throws IOException
+   {
+      try (InputStream in = new FileInputStream(filename))
+      {
+         world.load(in, world, imageStore);
+      }
+      VirtualWorld.scheduleActions(world, scheduler, imageStore);
+   }
+
+   /* carries on from a WorldSnapshot instead of a world file */
+   public void resume(File snapshot) throws IOException
+   {
+      WorldSnapshot.load(snapshot, world, scheduler, imageStore);
+   }
+
+   public void save(File snapshot) throws IOException
+   {
+      WorldSnapshot.save(snapshot, world, scheduler, imageStore);
+   }
+
+   /*
+      Same effect as a mouse click on the given tile in VirtualWorld:
+      drops leaves around it and (up to the helper limit) spawns a helper
+   */
+   public void click(Point tile)
+   {
+      Obstacle.clicked(LEAVES_KEY, tile, imageStore.getImageList(LEAVES_KEY),
+         world, imageStore, scheduler);
+   }
+
+   public void tick()
+   {
+      clock.advanceTo(clock.currentTime() + VirtualWorld.TIMER_ACTION_PERIOD);
+      scheduler.update();
+      ticks++;
+   }
+
+   public void run(long numTicks)
+   {
+      for (long i = 0; i < numTicks; i++)
+      {
+         tick();
+      }
+   }
+
+   /*
+      Runs event to event until the clock passes endTime or nothing is left
+      to run; each jump counts as one tick
+   */
+   public void runUntil(long endTime)
+   {
+      while (scheduler.advanceToNextEvent(clock))
+      {
+         ticks++;
+         if (clock.currentTime() >= endTime)
+         {
+            return;
+         }
+      }
+   }
+
+   public static void main(String [] args)
+   {
+      long numTicks = DEFAULT_TICKS;
+      int clicks = 0;
+      boolean jump = false;
+      boolean wheel = false;
+      boolean parallel = false;
+      boolean dstar = false;
+      boolean flowField = false;
+      boolean bounded = false;
+      boolean gridPath = false;
+      int numRows = VirtualWorld.WORLD_ROWS;
+      int numCols = VirtualWorld.WORLD_COLS;
+      String filename = VirtualWorld.LOAD_FILE_NAME;
+      String saveFile = null;
+      String resumeFile = null;
+
+      for (int i = 0; i < args.length; i++)
+      {
+         switch (args[i])
+         {
+            case TICKS_FLAG:
+               numTicks = Long.parseLong(args[++i]);
+               break;
+            case CLICKS_FLAG:
+               clicks = Integer.parseInt(args[++i]);
+               break;
+            case SEED_FLAG:
+               Functions.rand.setSeed(Long.parseLong(args[++i]));
+               break;
+            case JUMP_FLAG:
+               jump = true;
+               break;
+            case WHEEL_FLAG:
+               wheel = true;
+               break;
+            case SAVE_FLAG:
+               saveFile = args[++i];
+               break;
+            case RESUME_FLAG:
+               resumeFile = args[++i];
+               break;
+            case SIZE_FLAG:
+               numCols = Integer.parseInt(args[++i]);
+               numRows = Integer.parseInt(args[++i]);
+               break;
+            case VirtualWorld.DSTAR_FLAG:
+               dstar = true;
+               break;
+            case VirtualWorld.FLOW_FIELD_FLAG:
+               flowField = true;
+               break;
+            case VirtualWorld.JPS_FLAG:
+               Helper.setStrategy(HelperNotFull.class, new JumpPointPathingStrategy());
+               break;
+            case VirtualWorld.BOUNDED_FLAG:
+               bounded = true;
+               break;
+            case VirtualWorld.PARALLEL_FLAG:
+               parallel = true;
+               break;
+            case VirtualWorld.GRID_PATH_FLAG:
+               gridPath = true;
+               break;
+            default:
+               filename = args[i];
+         }
+      }
+
+      try
+      {
+         VirtualWorld.checkStrategyFlags(gridPath, dstar, bounded);
+      }
+      catch (IllegalArgumentException e)
+      {
+         System.err.println(e.getMessage());
+         return;
+      }
+
+      HeadlessSimulation sim = new HeadlessSimulation(wheel, numRows, numCols);
+      if (gridPath)
+      {
+         if (GridAStarPathingStrategy.fits(numRows, numCols))
+         {
+            Helper.setDefaultStrategy(new GridAStarPathingStrategy(numRows, numCols));
+         }
+         else
+         {
+            System.err.println(String.format(
+               "-gridpath ignored: grid A* needs a world of at most %d cells",
+               GridAStarPathingStrategy.MAX_CELLS));
+         }
+      }
+      SearchLimits limits = null;
+      if (bounded)
+      {
+         limits = VirtualWorld.useSearchLimits(sim.getWorld(), sim.getScheduler());
+      }
+      if (dstar)
+      {
+         DStarLitePathingStrategy strategy = new DStarLitePathingStrategy();
+         sim.getWorld().addOccupancyListener(strategy);
+         Helper.setDefaultStrategy(strategy);
+      }
+      if (flowField)
+      {
+         if (FlowFieldService.fits(sim.getWorld()))
+         {
+            Moves.setFlowFields(new FlowFieldService(sim.getWorld(), sim.getScheduler()));
+         }
+         else
+         {
+            System.err.println(String.format(
+               "-flowfield ignored: flow fields need a world of at most %d cells",
+               FlowFieldService.MAX_CELLS));
+         }
+      }
+      if (parallel)
+      {
+         VirtualWorld.usePathPlanner(sim.getWorld(), sim.getScheduler());
+      }
+      try
+      {
+         if (resumeFile != null)
+         {
+            sim.resume(new File(resumeFile));
+         }
+         else
+         {
+            sim.load(filename);
+         }
+      }
+      catch (IOException e)
+      {
+         System.err.println(e.getMessage());
+         return;
+      }
+
+      for (int i = 0; i < clicks; i++)
+      {
+         sim.click(new Point(Functions.rand.nextInt(numCols),
+            Functions.rand.nextInt(numRows)));
+      }
+
+      long start = System.nanoTime();
+      if (jump)
+      {
+         sim.runUntil(numTicks * VirtualWorld.TIMER_ACTION_PERIOD);
+      }
+      else
+      {
+         sim.run(numTicks);
+      }
+      long elapsed = Math.max(System.nanoTime() - start, 1);
+
+      if (saveFile != null)
+      {
+         try
+         {
+            sim.save(new File(saveFile));
+         }
+         catch (IOException e)
+         {
+            System.err.println(e.getMessage());
+         }
+      }
+
+      double seconds = elapsed / 1e9;
+      System.out.println(String.format(
+         "%d ticks (%d simulated ms) in %.3f s: %.0f ticks/s, %.0fx real time",
+         sim.getTicks(), sim.getVirtualTime(), seconds,
+         sim.getTicks() / seconds, sim.getVirtualTime() / (seconds * 1000)));
+      System.out.println(String.format("%d entities, %d pending events",
+         sim.getWorld().getEntities().size(),
+         sim.getScheduler().getPendingCount()));
+      System.out.println(String.format(
+         "%dx%d world, %d occupancy chunks allocated, %d background runs",
+         numCols, numRows, sim.getWorld().getAllocatedChunks(),
+         sim.getWorld().getBackgroundRuns()));
+      System.out.println(String.format("helper path cache: %d hits, %d misses",
+         Helper.getPathCacheHits(), Helper.getPathCacheMisses()));
+      if (limits != null)
+      {
+         System.out.println(String.format(
+            "search limits: %d cut short, %d unreachable goals skipped",
+            limits.getBudgetExhausted(), limits.getUnreachableHits()));
+      }
+   }
+}
@@ -0,0 +1,52 @@
+import java.util.PriorityQueue;
+import java.util.function.Consumer;
+
+/*
+HeapEventQueue: the original binary heap backend
+Cancelled events are left in the heap and only removed in bulk by compact().
+ */
+
+final class HeapEventQueue
+   implements EventQueue
+{
+   private PriorityQueue<Event> heap;
+
+   public HeapEventQueue()
+   {
+      this.heap = new PriorityQueue<>(new EventComparator());
+   }
+
+   public void add(Event event)
+   {
+      this.heap.add(event);
+   }
+
+   public void compact()
+   {
+      this.heap.removeIf(Event::isCancelled);
+   }
+
+   public Event pollBefore(long time)
+   {
+      if (!this.heap.isEmpty() && this.heap.peek().getTime() < time)
+      {
+         return this.heap.poll();
+      }
+      return null;
+   }
+
+   public Event peek()
+   {
+      return this.heap.peek();
+   }
+
+   public int size()
+   {
+      return this.heap.size();
+   }
+
+   public void forEach(Consumer<Event> visitor)
+   {
+      this.heap.forEach(visitor);
+   }
+}
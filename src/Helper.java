@@ -1,12 +1,44 @@
 import processing.core.PImage;
 import java.util.function.BiPredicate;
-import java.util.function.Function;
 import java.util.function.Predicate;
+import java.util.HashMap;
 import java.util.List;
-import java.util.stream.Stream;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
 
 public abstract class Helper extends Moves{
-    protected PathingStrategy strategy = new AStarPathingStrategy();
+    private static PathingStrategy defaultStrategy = new AStarPathingStrategy();
+    private static final Map<Class<?>, PathingStrategy> kindStrategies = new HashMap<>();
+    protected PathingStrategy strategy = kindStrategies.getOrDefault(getClass(), defaultStrategy);
+
+    // used by helpers created from now on (helpers are recreated when they transform)
+    public static void setDefaultStrategy(PathingStrategy strategy){
+        defaultStrategy = strategy;
+    }
+
+    // overrides the default for one kind of helper, e.g. only the ones out foraging
+    public static void setStrategy(Class<? extends Helper> kind, PathingStrategy strategy){
+        kindStrategies.put(kind, strategy);
+    }
+
+    // steps of a cached path checked against the occupancy grid before it is reused
+    private static final int PATH_LOOKAHEAD = 3;
+    private static final LongAdder pathCacheHits = new LongAdder();
+    private static final LongAdder pathCacheMisses = new LongAdder();
+
+    // last computed path; pathIndex is the next step, valid while we stand on pathFrom
+    private List<Point> path;
+    private int pathIndex;
+    private Point pathFrom;
+    private Point pathTarget;
+
+    public static long getPathCacheHits(){
+        return pathCacheHits.sum();
+    }
+
+    public static long getPathCacheMisses(){
+        return pathCacheMisses.sum();
+    }
 
     private int resourceLimit;
     public Helper(String id, Point position, List<PImage> images, int resourceLimit, int actionPeriod, int animationPeriod){
@@ -19,26 +51,78 @@ public abstract class Helper extends Moves{
     protected int getResourceLimit() {
         return resourceLimit;
     }
+    // the cached path, for snapshots; null when there is none
+    protected List<Point> getCachedPath() {
+        return path;
+    }
+
+    protected int getCachedPathIndex() {
+        return pathIndex;
+    }
+
+    protected Point getCachedPathFrom() {
+        return pathFrom;
+    }
+
+    protected Point getCachedPathTarget() {
+        return pathTarget;
+    }
+
+    protected void restoreCachedPath(List<Point> path, int pathIndex, Point pathFrom, Point pathTarget) {
+        this.path = path;
+        this.pathIndex = pathIndex;
+        this.pathFrom = pathFrom;
+        this.pathTarget = pathTarget;
+    }
+
+    protected boolean canPlanAhead(){
+        return strategy.canPlanAhead();
+    }
+
     protected Point nextPosition(WorldModel world,
                                  Point destPos){
-        Predicate<Point> canPassThrough = (point) -> world.withinBounds(point) && !world.isOccupied(point);
+        Predicate<Point> canPassThrough = passable(world);
+
+        if (cachedPathUsable(destPos, canPassThrough)){
+            MovePlan.whenCommitted(pathCacheHits::increment);
+            return followPath(path, pathIndex, destPos);
+        }
+        MovePlan.whenCommitted(pathCacheMisses::increment);
+
         BiPredicate<Point, Point> withinReach = (p1, p2) -> p1.adjacent(p2);
         List<Point> path =  strategy.computePath(this.getPosition(),
-                destPos, canPassThrough, withinReach,DIAGONAL_CARDINAL_NEIGHBORS);
-        if (path.size()==0) return getPosition();
-        return  path.get(0);
-    }
-
-    private static final Function<Point, Stream<Point>> DIAGONAL_CARDINAL_NEIGHBORS =
-            point ->
-                    Stream.<Point>builder()
-                            .add(new Point(point.x - 1, point.y - 1))
-                            .add(new Point(point.x + 1, point.y + 1))
-                            .add(new Point(point.x - 1, point.y + 1))
-                            .add(new Point(point.x + 1, point.y - 1))
-                            .add(new Point(point.x, point.y - 1))
-                            .add(new Point(point.x, point.y + 1))
-                            .add(new Point(point.x - 1, point.y))
-                            .add(new Point(point.x + 1, point.y))
-                            .build();
+                destPos, canPassThrough, withinReach, Neighbors.DIAGONAL_CARDINAL);
+        if (path.size()==0){
+            MovePlan.whenCommitted(() -> this.path = null);
+            return getPosition();
+        }
+        return followPath(path, 0, destPos);
+    }
+
+    /*
+       The cached path can be followed if we are where it left us, the target
+       has not moved and the next few steps are still clear
+    */
+    private boolean cachedPathUsable(Point destPos, Predicate<Point> canPassThrough){
+        if (path == null || !getPosition().equals(pathFrom) || !destPos.equals(pathTarget)){
+            return false;
+        }
+        int end = Math.min(path.size(), pathIndex + PATH_LOOKAHEAD);
+        for (int i = pathIndex; i < end; i++){
+            if (!canPassThrough.test(path.get(i))) return false;
+        }
+        return pathIndex < path.size();
+    }
+
+    // the step at index of path; the cache moves past it once the step is taken
+    private Point followPath(List<Point> path, int index, Point target){
+        Point next = path.get(index);
+        MovePlan.whenCommitted(() -> {
+            this.path = path;
+            this.pathIndex = index + 1;
+            this.pathFrom = next;
+            this.pathTarget = target;
+        });
+        return next;
+    }
 }
@@ -15,8 +15,7 @@ public class HelperFull extends Helper {
     protected void executeActivity(WorldModel world,
                                         ImageStore imageStore, EventScheduler scheduler)
     {
-        Optional<Entity> fullTarget = world.findNearest(getPosition(),
-                 Basket.class);
+        Optional<Entity> fullTarget = findTarget(world);
 
         if (fullTarget.isPresent() &&
                 moveTo(world, fullTarget.get(), scheduler))
@@ -35,6 +34,37 @@ public class HelperFull extends Helper {
         }
     }
 
+    protected Optional<Entity> findTarget(WorldModel world)
+    {
+        if (flowFields != null)
+        {
+            Optional<Entity> basket = flowFields.goalFrom(Basket.class, true, getPosition());
+            if (basket.isPresent())
+            {
+                return basket;
+            }
+        }
+        return world.findNearest(getPosition(), Basket.class);
+    }
+
+    protected boolean canPlanAhead()
+    {
+        return flowFields == null && super.canPlanAhead();
+    }
+
+    protected Point nextPosition(WorldModel world, Point destPos)
+    {
+        if (flowFields != null)
+        {
+            Optional<Point> step = flowFields.nextStep(Basket.class, true, getPosition(), destPos);
+            if (step.isPresent())
+            {
+                return step.get();
+            }
+        }
+        return super.nextPosition(world, destPos);
+    }
+
     protected boolean transform(WorldModel world,
                               EventScheduler scheduler, ImageStore imageStore)
     {
@@ -57,7 +87,7 @@ public class HelperFull extends Helper {
         }
         else
         {
-            Point nextPos = this.nextPosition(world, target.getPosition());
+            Point nextPos = this.plannedNextPosition(world, target.getPosition());
 
             if (!getPosition().equals(nextPos))
             {
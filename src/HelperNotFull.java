@@ -14,13 +14,15 @@ public class HelperNotFull extends Helper {
         this.resourceCount = resourceCount;
     }
 
+    protected int getResourceCount() {
+        return resourceCount;
+    }
+
     protected void executeActivity(WorldModel world, ImageStore imageStore,
                                            EventScheduler scheduler)
     {
-        Optional<Entity> mainChar = world.findNearest(getPosition(), MainCollector.class);
-        if (mainChar.isPresent()) {
-            Optional<Entity> notFullTarget = world.findNearest(getPosition(),
-                    Fruit.class);
+        if (world.getEntityCount(MainCollector.class) > 0) {
+            Optional<Entity> notFullTarget = findTarget(world);
             if (!notFullTarget.isPresent() ||
                     !moveTo(world, notFullTarget.get(), scheduler) ||
                     !transform(world, scheduler, imageStore)) {
@@ -32,6 +34,15 @@ public class HelperNotFull extends Helper {
         }
     }
 
+    protected Optional<Entity> findTarget(WorldModel world)
+    {
+        if (world.getEntityCount(MainCollector.class) == 0)
+        {
+            return Optional.empty();
+        }
+        return world.findNearest(getPosition(), Fruit.class);
+    }
+
     protected boolean transform(WorldModel world,
                                     EventScheduler scheduler, ImageStore imageStore)
     {
@@ -63,7 +74,7 @@ public class HelperNotFull extends Helper {
         }
         else
         {
-            Point nextPos = this.nextPosition(world, target.getPosition());
+            Point nextPos = this.plannedNextPosition(world, target.getPosition());
 
             if (!getPosition().equals(nextPos))
             {
@@ -0,0 +1,173 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+import processing.core.PImage;
+
+/*
+ImageCache: decoded, colour keyed images kept on disk between runs
+One file holds an entry per source (image file plus optional key colour) with the length
+and modification time the file had when it was decoded, and its final pixels. Reading loads
+the file and copies the pixels of every entry that still matches its file straight into new
+PImages, so a warm start decodes no PNG/BMP/JPG at all. An entry whose file changed is
+simply not returned; the caller decodes it again and writes a fresh cache.
+ */
+
+final class ImageCache
+{
+   private static final int MAGIC = 0x494d4743;
+   private static final int VERSION = 1;
+   private static final int NO_MASK = 0;
+
+   /* an image file, and the colour made transparent in it (null for none) */
+   public static final class Source
+   {
+      private final String path;
+      private final Integer mask;
+
+      public Source(String path, Integer mask)
+      {
+         this.path = path;
+         this.mask = mask;
+      }
+
+      public String getPath()
+      {
+         return path;
+      }
+
+      public Integer getMask()
+      {
+         return mask;
+      }
+
+      public boolean equals(Object other)
+      {
+         if (!(other instanceof Source))
+         {
+            return false;
+         }
+         Source source = (Source)other;
+         return this.path.equals(source.path) && Objects.equals(this.mask, source.mask);
+      }
+
+      public int hashCode()
+      {
+         return 31 * this.path.hashCode() + Objects.hashCode(this.mask);
+      }
+   }
+
+   private final File file;
+
+   public ImageCache(File file)
+   {
+      this.file = file;
+   }
+
+   /*
+      Images of the wanted sources whose cache entry matches the file on disk;
+      an unreadable or foreign cache file gives none
+   */
+   public Map<Source, PImage> read(Collection<Source> wanted) throws IOException
+   {
+      Map<Source, PImage> images = new HashMap<>();
+      if (!this.file.isFile())
+      {
+         return images;
+      }
+
+      try (FileChannel channel = FileChannel.open(this.file.toPath(), StandardOpenOption.READ))
+      {
+         // read onto the heap, not mapped: a mapped file cannot be replaced on Windows
+         ByteBuffer buffer = ByteBuffer.allocate((int)channel.size());
+         while (buffer.hasRemaining())
+         {
+            if (channel.read(buffer) == -1)
+            {
+               break;
+            }
+         }
+         buffer.flip();
+         if (buffer.remaining() < 12 || buffer.getInt() != MAGIC || buffer.getInt() != VERSION)
+         {
+            return images;
+         }
+
+         int count = buffer.getInt();
+         for (int i = 0; i < count; i++)
+         {
+            byte[] path = new byte[buffer.getInt()];
+            buffer.get(path);
+            boolean masked = buffer.get() != NO_MASK;
+            int mask = buffer.getInt();
+            long length = buffer.getLong();
+            long modified = buffer.getLong();
+            int format = buffer.getInt();
+            int width = buffer.getInt();
+            int height = buffer.getInt();
+            int pixels = width * height;
+
+            Source source = new Source(new String(path, StandardCharsets.UTF_8),
+               masked ? mask : null);
+            File imageFile = new File(source.getPath());
+            if (wanted.contains(source) && imageFile.length() == length
+               && imageFile.lastModified() == modified)
+            {
+               PImage image = new PImage(width, height, format);
+               IntBuffer ints = buffer.slice().asIntBuffer();
+               ints.get(image.pixels, 0, pixels);
+               images.put(source, image);
+            }
+            buffer.position(buffer.position() + pixels * Integer.BYTES);
+         }
+      }
+      catch (RuntimeException e)
+      {
+         // truncated or corrupt, start over
+         images.clear();
+      }
+      return images;
+   }
+
+   /* replaces the cache with entries for these images, in iteration order */
+   public void write(Map<Source, PImage> images) throws IOException
+   {
+      File temp = new File(this.file.getPath() + ".tmp");
+      try (DataOutputStream out = new DataOutputStream(
+         new BufferedOutputStream(new FileOutputStream(temp))))
+      {
+         out.writeInt(MAGIC);
+         out.writeInt(VERSION);
+         out.writeInt(images.size());
+         for (Map.Entry<Source, PImage> entry : images.entrySet())
+         {
+            Source source = entry.getKey();
+            PImage image = entry.getValue();
+            File imageFile = new File(source.getPath());
+            byte[] path = source.getPath().getBytes(StandardCharsets.UTF_8);
+
+            out.writeInt(path.length);
+            out.write(path);
+            out.writeByte(source.getMask() == null ? NO_MASK : 1);
+            out.writeInt(source.getMask() == null ? 0 : source.getMask());
+            out.writeLong(imageFile.length());
+            out.writeLong(imageFile.lastModified());
+            out.writeInt(image.format);
+            out.writeInt(image.width);
+            out.writeInt(image.height);
+
+            image.loadPixels();
+            ByteBuffer bytes = ByteBuffer.allocate(image.pixels.length * Integer.BYTES);
+            bytes.asIntBuffer().put(image.pixels);
+            out.write(bytes.array());
+         }
+      }
+      Files.move(temp.toPath(), this.file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+   }
+}
@@ -1,10 +1,17 @@
+import java.io.File;
+import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
 
 import processing.core.PApplet;
 import processing.core.PImage;
 
 /*
 ImageStore: to ideally keep track of the images used in our virtual world
+Once loaded, every key's frames are an array-backed list, so picking a frame by index is
+constant time, and all frames are packed into a SpriteAtlas for drawing.
+A file listed several times with the same key colour is decoded once and shared.
  */
 
 final class ImageStore
@@ -14,17 +21,38 @@ final class ImageStore
    public static final int KEYED_RED_IDX = 2;
    public static final int KEYED_GREEN_IDX = 3;
    public static final int KEYED_BLUE_IDX = 4;
+   public static final int PARALLEL_KEY_PIXELS = 1 << 18;
+   public static final int KEY_CHUNK = 1 << 16;
 
 
    private Map<String, List<PImage>> images;
    private List<PImage> defaultImages;
+   private SpriteAtlas atlas;
 
    public ImageStore(PImage defaultImage)
    {
       this.images = new HashMap<>();
-      defaultImages = new LinkedList<>();
-      defaultImages.add(defaultImage);
+      defaultImages = Collections.singletonList(defaultImage);
+      atlas = SpriteAtlas.pack(defaultImages);
    }
+
+   public SpriteAtlas getAtlas()
+   {
+      return atlas;
+   }
+   /* key the frames were loaded under, or null for the default images */
+   public String getKey(List<PImage> frames)
+   {
+      for (Map.Entry<String, List<PImage>> entry : this.images.entrySet())
+      {
+         if (entry.getValue() == frames)
+         {
+            return entry.getKey();
+         }
+      }
+      return null;
+   }
+
    public List<PImage> getImageList(String key)
    {
 
@@ -33,43 +61,120 @@ final class ImageStore
    public void loadImages(Scanner in,
                                  PApplet screen)
    {
+      loadImages(in, screen, null);
+   }
+
+   /*
+      Each distinct file (and key colour) is decoded once, all of them in
+      parallel, unless cacheFile still holds its keyed pixels from an earlier
+      run; a cache that missed anything is rewritten afterwards
+   */
+   public void loadImages(Scanner in, PApplet screen, File cacheFile)
+   {
+      // frame tables are fixed once built, grow them again while loading
+      this.images.replaceAll((key, frames) -> new ArrayList<>(frames));
+
+      List<String> keys = new ArrayList<>();
+      List<ImageCache.Source> lines = new ArrayList<>();
       int lineNumber = 0;
       while (in.hasNextLine())
+      {
+         String[] attrs = in.nextLine().split("\\s");
+         if (attrs.length >= 2)
+         {
+            keys.add(attrs[0]);
+            lines.add(new ImageCache.Source(attrs[1], keyColor(attrs, screen, lineNumber)));
+         }
+         lineNumber++;
+      }
+
+      Set<ImageCache.Source> sources = new LinkedHashSet<>(lines);
+      ImageCache cache = cacheFile == null ? null : new ImageCache(cacheFile);
+      Map<ImageCache.Source, PImage> loaded = new ConcurrentHashMap<>();
+      if (cache != null)
       {
          try
          {
-            processImageLine(this.images, in.nextLine(), screen);
+            loaded.putAll(cache.read(sources));
          }
-         catch (NumberFormatException e)
+         catch (IOException e)
          {
-            System.out.println(String.format("Image format error on line %d",
-                    lineNumber));
+            System.err.println(e.getMessage());
          }
-         lineNumber++;
       }
-   }
 
-   public void processImageLine(Map<String, List<PImage>> images,
-                                       String line, PApplet screen)
-   {
-      String[] attrs = line.split("\\s");
-      if (attrs.length >= 2)
-      {
-         String key = attrs[0];
-         PImage img = screen.loadImage(attrs[1]);
+      List<ImageCache.Source> misses = new ArrayList<>(sources);
+      misses.removeAll(loaded.keySet());
+      misses.parallelStream().forEach(source -> {
+         PImage img = screen.loadImage(source.getPath());
          if (img != null && img.width != -1)
          {
-            List<PImage> imgs = getImages(images, key);
-            imgs.add(img);
+            if (source.getMask() != null)
+            {
+               setAlpha(img, source.getMask(), 0);
+            }
+            loaded.put(source, img);
+         }
+      });
 
-            if (attrs.length >= KEYED_IMAGE_MIN)
+      if (cache != null && !misses.isEmpty())
+      {
+         Map<ImageCache.Source, PImage> entries = new LinkedHashMap<>();
+         for (ImageCache.Source source : sources)
+         {
+            if (loaded.containsKey(source))
             {
-               int r = Integer.parseInt(attrs[KEYED_RED_IDX]);
-               int g = Integer.parseInt(attrs[KEYED_GREEN_IDX]);
-               int b = Integer.parseInt(attrs[KEYED_BLUE_IDX]);
-               setAlpha(img, screen.color(r, g, b), 0);
+               entries.put(source, loaded.get(source));
             }
          }
+         try
+         {
+            cache.write(entries);
+         }
+         catch (IOException e)
+         {
+            System.err.println(e.getMessage());
+         }
+      }
+
+      for (int i = 0; i < lines.size(); i++)
+      {
+         PImage img = loaded.get(lines.get(i));
+         if (img != null)
+         {
+            getImages(this.images, keys.get(i)).add(img);
+         }
+      }
+
+      List<PImage> frames = new ArrayList<>(this.defaultImages);
+      for (Map.Entry<String, List<PImage>> entry : this.images.entrySet())
+      {
+         List<PImage> frameTable = Arrays.asList(entry.getValue().toArray(new PImage[0]));
+         entry.setValue(Collections.unmodifiableList(frameTable));
+         frames.addAll(frameTable);
+      }
+      this.atlas = SpriteAtlas.pack(frames);
+   }
+
+   /* colour a line makes transparent, null if it names none */
+   private static Integer keyColor(String[] attrs, PApplet screen, int lineNumber)
+   {
+      if (attrs.length < KEYED_IMAGE_MIN)
+      {
+         return null;
+      }
+      try
+      {
+         int r = Integer.parseInt(attrs[KEYED_RED_IDX]);
+         int g = Integer.parseInt(attrs[KEYED_GREEN_IDX]);
+         int b = Integer.parseInt(attrs[KEYED_BLUE_IDX]);
+         return screen.color(r, g, b);
+      }
+      catch (NumberFormatException e)
+      {
+         System.out.println(String.format("Image format error on line %d",
+                 lineNumber));
+         return null;
       }
    }
 
@@ -79,25 +184,47 @@ final class ImageStore
       List<PImage> imgs = images.get(key);
       if (imgs == null)
       {
-         imgs = new LinkedList<>();
+         imgs = new ArrayList<>();
          images.put(key, imgs);
       }
       return imgs;
    }
    public void setAlpha(PImage img, int maskColor, int alpha)
    {
-      int alphaValue = alpha << 24;
-      int nonAlpha = maskColor & COLOR_MASK;
       img.format = PApplet.ARGB;
       img.loadPixels();
-      for (int i = 0; i < img.pixels.length; i++)
+      int[] pixels = img.pixels;
+      if (pixels.length < PARALLEL_KEY_PIXELS)
       {
-         if ((img.pixels[i] & COLOR_MASK) == nonAlpha)
-         {
-            img.pixels[i] = alphaValue | nonAlpha;
-         }
+         keyPixels(pixels, 0, pixels.length, maskColor, alpha);
+      }
+      else
+      {
+         // big sheets are keyed a chunk per worker
+         int chunks = (pixels.length + KEY_CHUNK - 1) / KEY_CHUNK;
+         IntStream.range(0, chunks).parallel().forEach(chunk ->
+                 keyPixels(pixels, chunk * KEY_CHUNK,
+                         Math.min((chunk + 1) * KEY_CHUNK, pixels.length), maskColor, alpha));
       }
       img.updatePixels();
    }
 
+   /*
+      Gives pixels [from, to) of the mask colour the given alpha. The loop has
+      no branch, so the JIT can turn it into SIMD code that keys several pixels
+      per instruction
+   */
+   public static void keyPixels(int[] pixels, int from, int to, int maskColor, int alpha)
+   {
+      int nonAlpha = maskColor & COLOR_MASK;
+      int keyed = (alpha << 24) | nonAlpha;
+      for (int i = from; i < to; i++)
+      {
+         int pixel = pixels[i];
+         // all ones where the colour matches, zero elsewhere
+         int match = (((pixel & COLOR_MASK) ^ nonAlpha) - 1) >> 31;
+         pixels[i] = (pixel & ~match) | (keyed & match);
+      }
+   }
+
 }
@@ -0,0 +1,271 @@
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiPredicate;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/*
+JumpPointPathingStrategy: Jump Point Search for 8-connected movement on a uniform grid
+Instead of pushing every neighbour, a search scans straight and diagonal lines and only
+stops at cells where a blocked cell forces a turn (or where the goal is within reach), so on
+open maps very few nodes are ever expanded. Costs and heuristic are the same as
+AStarPathingStrategy (10 per cardinal step, 20 per diagonal) and diagonals may cut corners,
+which is what Neighbors.DIAGONAL_CARDINAL, the helpers' movement, allows.
+
+potentialNeighbors is ignored: the strategy always moves in all eight directions.
+canPassThrough must be false outside some bounded area (e.g. the world's bounds) or a
+line scan would never stop. The returned path is expanded back into single steps.
+ */
+
+class JumpPointPathingStrategy
+        implements PathingStrategy
+{
+    private static final int D = 10;
+
+    private static final int[][] ALL_DIRECTIONS = {
+            {-1, -1}, {1, 1}, {-1, 1}, {1, -1}, {0, -1}, {0, 1}, {-1, 0}, {1, 0}};
+
+    private final LongAdder expanded = new LongAdder();
+
+    /* nodes taken off the open list so far, summed over every search */
+    public long getExpandedNodes()
+    {
+        return this.expanded.sum();
+    }
+
+    public List<Point> computePath(Point start, Point end,
+                                   Predicate<Point> canPassThrough,
+                                   BiPredicate<Point, Point> withinReach,
+                                   Function<Point, Stream<Point>> potentialNeighbors)
+    {
+        return new Search(end, canPassThrough, withinReach).run(start);
+    }
+
+    private static final class Node
+    {
+        private final Point point;
+        private final Node parent;
+        private final int g;
+        private final int f;
+        private final int h;
+
+        Node(Point point, Node parent, int g, int h)
+        {
+            this.point = point;
+            this.parent = parent;
+            this.g = g;
+            this.h = h;
+            this.f = g + h;
+        }
+    }
+
+    private final class Search
+    {
+        private final Point end;
+        private final Predicate<Point> canPassThrough;
+        private final BiPredicate<Point, Point> withinReach;
+
+        Search(Point end, Predicate<Point> canPassThrough,
+               BiPredicate<Point, Point> withinReach)
+        {
+            this.end = end;
+            this.canPassThrough = canPassThrough;
+            this.withinReach = withinReach;
+        }
+
+        List<Point> run(Point start)
+        {
+            // lowest f first, ties broken towards the goal; superseded nodes are skipped
+            PriorityQueue<Node> open = new PriorityQueue<>(
+                    (a, b) -> a.f != b.f ? Integer.compare(a.f, b.f) : Integer.compare(a.h, b.h));
+            Map<Point, Node> best = new HashMap<>();
+            Set<Point> closed = new HashSet<>();
+
+            Node first = new Node(start, null, 0, heuristic(start));
+            open.add(first);
+            best.put(start, first);
+
+            while (!open.isEmpty())
+            {
+                Node current = open.poll();
+                if (best.get(current.point) != current || !closed.add(current.point))
+                {
+                    continue;
+                }
+
+                // reached goal!
+                if (this.withinReach.test(current.point, this.end))
+                {
+                    return buildPath(current);
+                }
+                expanded.increment();
+
+                for (int[] direction : directions(current))
+                {
+                    Point jumpPoint = jump(current.point, direction[0], direction[1]);
+                    if (jumpPoint == null || closed.contains(jumpPoint))
+                    {
+                        continue;
+                    }
+
+                    int g = current.g + D * (Math.abs(jumpPoint.x - current.point.x) +
+                            Math.abs(jumpPoint.y - current.point.y));
+                    Node known = best.get(jumpPoint);
+                    if (known == null || g < known.g)
+                    {
+                        Node next = new Node(jumpPoint, current, g, heuristic(jumpPoint));
+                        best.put(jumpPoint, next);
+                        open.add(next);
+                    }
+                }
+            }
+            return new ArrayList<>();
+        }
+
+        /*
+           Directions worth scanning from a node: everything from the start,
+           otherwise the natural ones for the way we came in plus any forced
+           by a blocked cell beside us
+        */
+        private List<int[]> directions(Node node)
+        {
+            if (node.parent == null)
+            {
+                return Arrays.asList(ALL_DIRECTIONS);
+            }
+
+            int x = node.point.x;
+            int y = node.point.y;
+            int dx = Integer.signum(x - node.parent.point.x);
+            int dy = Integer.signum(y - node.parent.point.y);
+            List<int[]> directions = new ArrayList<>(5);
+
+            if (dx != 0 && dy != 0)
+            {
+                directions.add(new int[] {dx, 0});
+                directions.add(new int[] {0, dy});
+                directions.add(new int[] {dx, dy});
+                if (!passable(x - dx, y))
+                {
+                    directions.add(new int[] {-dx, dy});
+                }
+                if (!passable(x, y - dy))
+                {
+                    directions.add(new int[] {dx, -dy});
+                }
+            }
+            else if (dx != 0)
+            {
+                directions.add(new int[] {dx, 0});
+                if (!passable(x, y + 1))
+                {
+                    directions.add(new int[] {dx, 1});
+                }
+                if (!passable(x, y - 1))
+                {
+                    directions.add(new int[] {dx, -1});
+                }
+            }
+            else
+            {
+                directions.add(new int[] {0, dy});
+                if (!passable(x + 1, y))
+                {
+                    directions.add(new int[] {1, dy});
+                }
+                if (!passable(x - 1, y))
+                {
+                    directions.add(new int[] {-1, dy});
+                }
+            }
+            return directions;
+        }
+
+        /*
+           Scans from (x, y) in one direction and returns the first cell worth
+           expanding, or null if the line runs into a blocked cell first
+        */
+        private Point jump(Point from, int dx, int dy)
+        {
+            int x = from.x;
+            int y = from.y;
+
+            while (true)
+            {
+                x += dx;
+                y += dy;
+                Point next = new Point(x, y);
+                if (!this.canPassThrough.test(next))
+                {
+                    return null;
+                }
+                if (this.withinReach.test(next, this.end))
+                {
+                    return next;
+                }
+
+                if (dx != 0 && dy != 0)
+                {
+                    if ((passable(x - dx, y + dy) && !passable(x - dx, y))
+                            || (passable(x + dx, y - dy) && !passable(x, y - dy)))
+                    {
+                        return next;
+                    }
+                    // a diagonal stops wherever one of its straight scans finds something
+                    if (jump(next, dx, 0) != null || jump(next, 0, dy) != null)
+                    {
+                        return next;
+                    }
+                }
+                else if (dx != 0)
+                {
+                    if ((passable(x + dx, y + 1) && !passable(x, y + 1))
+                            || (passable(x + dx, y - 1) && !passable(x, y - 1)))
+                    {
+                        return next;
+                    }
+                }
+                else
+                {
+                    if ((passable(x + 1, y + dy) && !passable(x + 1, y))
+                            || (passable(x - 1, y + dy) && !passable(x - 1, y)))
+                    {
+                        return next;
+                    }
+                }
+            }
+        }
+
+        /* jump points are joined by straight or diagonal runs, fill those in */
+        private List<Point> buildPath(Node goal)
+        {
+            LinkedList<Point> path = new LinkedList<>();
+            for (Node node = goal; node.parent != null; node = node.parent)
+            {
+                Point from = node.parent.point;
+                int dx = Integer.signum(node.point.x - from.x);
+                int dy = Integer.signum(node.point.y - from.y);
+                int x = node.point.x;
+                int y = node.point.y;
+                while (x != from.x || y != from.y)
+                {
+                    path.addFirst(new Point(x, y));
+                    x -= dx;
+                    y -= dy;
+                }
+            }
+            return new ArrayList<>(path);
+        }
+
+        private boolean passable(int x, int y)
+        {
+            return this.canPassThrough.test(new Point(x, y));
+        }
+
+        private int heuristic(Point point)
+        {
+            return point.manhattanDist(this.end);
+        }
+    }
+}
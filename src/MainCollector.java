@@ -18,6 +18,12 @@ public class MainCollector extends Entity{
         return single_instance;
     }
 
+    // a loaded snapshot brings its own collector, whatever came before
+    public static MainCollector restoreInstance(String id, Point position,List<PImage> images){
+        single_instance = new MainCollector(id, position, images);
+        return single_instance;
+    }
+
     public static MainCollector getInstance(){
         return single_instance;
     }
@@ -0,0 +1,115 @@
+import java.util.*;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+/*
+MovePlan: a mover's next step worked out ahead of its turn, and what that step relied on
+A PathPlanner searches for many movers at once, against the world as the batch found it.
+While a plan is being made on a thread, everything the search would change (path caches,
+counters, remembered goals, the tick's search budget) is deferred to the plan instead
+(whenCommitted), and everything else it relied on is noted: the occupancy cells it looked
+at (read) and conditions on shared state (check). When the mover's event runs, the plan is
+only used if none of those cells has changed since and every check still holds, in which
+case a search made right then would have found the same step; its deferred effects are
+then applied in event order. Otherwise the mover searches again as usual, so a run with a
+planner ends exactly where the same run without one does.
+ */
+
+final class MovePlan
+{
+   private static final ThreadLocal<MovePlan> PLANNING = new ThreadLocal<>();
+
+   private final PathPlanner planner;
+   private final long batch;
+   private final Point from;
+   private final Point target;
+   private Point next;
+
+   private final Set<Point> reads = new HashSet<>();
+   private final List<BooleanSupplier> checks = new ArrayList<>();
+   private final List<Runnable> effects = new ArrayList<>();
+
+   public MovePlan(PathPlanner planner, Point from, Point target)
+   {
+      this.planner = planner;
+      this.batch = planner.getBatch();
+      this.from = from;
+      this.target = target;
+   }
+
+   /* the plan being made on this thread, null outside planning */
+   public static MovePlan current()
+   {
+      return PLANNING.get();
+   }
+
+   /* runs effect now, or when the plan being made on this thread commits */
+   public static void whenCommitted(Runnable effect)
+   {
+      MovePlan plan = PLANNING.get();
+      if (plan == null)
+      {
+         effect.run();
+      }
+      else
+      {
+         plan.effects.add(effect);
+      }
+   }
+
+   /* runs the search for the step with this plan collecting what it reads and defers */
+   public void make(Supplier<Point> search)
+   {
+      PLANNING.set(this);
+      try
+      {
+         this.next = search.get();
+      }
+      finally
+      {
+         PLANNING.remove();
+      }
+   }
+
+   public Point getNext()
+   {
+      return next;
+   }
+
+   /* the search looked at whether cell is occupied */
+   public void read(Point cell)
+   {
+      this.reads.add(cell);
+   }
+
+   /* the search relied on something that must still hold at commit */
+   public void check(BooleanSupplier stillHolds)
+   {
+      this.checks.add(stillHolds);
+   }
+
+   /*
+      Whether the step is still the one a search from position towards destPos
+      would find now; if so, the deferred effects are applied
+   */
+   public boolean commit(Point position, Point destPos)
+   {
+      if (!this.from.equals(position) || !this.target.equals(destPos)
+         || !this.planner.unchangedSince(this.batch, this.reads))
+      {
+         return false;
+      }
+      for (BooleanSupplier check : this.checks)
+      {
+         if (!check.getAsBoolean())
+         {
+            return false;
+         }
+      }
+      for (Runnable effect : this.effects)
+      {
+         effect.run();
+      }
+      return true;
+   }
+}
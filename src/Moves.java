@@ -1,17 +1,89 @@
 import processing.core.PImage;
 
 import java.util.List;
+import java.util.Optional;
 import java.util.function.BiPredicate;
 import java.util.function.Function;
 import java.util.function.Predicate;
 import java.util.stream.Stream;
 
 public abstract class Moves extends AnimatedEntity{
+    // step worked out ahead of time by a PathPlanner, see MovePlan
+    private MovePlan plan;
+
+    // when set, movers that share a kind of goal read their steps from its distance fields
+    protected static FlowFieldService flowFields;
+
+    public static void setFlowFields(FlowFieldService service){
+        flowFields = service;
+    }
+
     public Moves(String id, Point position, List<PImage> images, int actionPeriod, int animationPeriod){
         super(id, position, images, actionPeriod, animationPeriod);
     }
 
     protected abstract boolean moveTo(WorldModel world, Entity target, EventScheduler scheduler);
     protected abstract Point nextPosition(WorldModel world, Point destPos);
+    protected abstract Optional<Entity> findTarget(WorldModel world);
 
+    /*
+       Whether nextPosition depends only on the world's occupancy and what a
+       MovePlan can check, so it may be worked out ahead of this mover's turn
+    */
+    protected boolean canPlanAhead()
+    {
+        return true;
+    }
+
+    /*
+       Cells nextPosition may step through; while a plan is being made, every
+       cell asked about is noted in it
+    */
+    protected Predicate<Point> passable(WorldModel world)
+    {
+        MovePlan planning = MovePlan.current();
+        if (planning == null)
+        {
+            return point -> world.withinBounds(point) && !world.isOccupied(point);
+        }
+        return point -> {
+            planning.read(point);
+            return world.withinBounds(point) && !world.isOccupied(point);
+        };
+    }
+
+    /*
+       Planning phase: works out the next step towards the current target.
+       Only reads the world and defers its effects, so planners may run this
+       for many movers at once.
+    */
+    protected void planNextPosition(WorldModel world, PathPlanner planner)
+    {
+        this.plan = null;
+
+        Optional<Entity> target = findTarget(world);
+        if (target.isPresent() && !getPosition().adjacent(target.get().getPosition()))
+        {
+            Point destPos = target.get().getPosition();
+            MovePlan plan = new MovePlan(planner, getPosition(), destPos);
+            plan.make(() -> nextPosition(world, destPos));
+            this.plan = plan;
+        }
+    }
+
+    /*
+       Commit phase: uses the planned step if a search made now would find
+       the same one; searches again otherwise
+    */
+    protected Point plannedNextPosition(WorldModel world, Point destPos)
+    {
+        MovePlan plan = this.plan;
+        this.plan = null;
+
+        if (plan != null && plan.commit(getPosition(), destPos))
+        {
+            return plan.getNext();
+        }
+        return nextPosition(world, destPos);
+    }
 }
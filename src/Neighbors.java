@@ -0,0 +1,49 @@
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/*
+Neighbors: allocation-free neighbour generation for pathing strategies
+Instead of a Stream of new Points per expanded node, the neighbours of (x, y) are handed
+to a callback as plain coordinates. The stream functions still work: of() wraps one as
+Neighbors and asFunction() goes the other way for strategies that only take streams.
+ */
+
+interface Neighbors
+{
+   interface Visitor
+   {
+      void visit(int x, int y);
+   }
+
+   void forEach(int x, int y, Visitor visitor);
+
+   Neighbors CARDINAL = offsets(new int[][] {{0, -1}, {0, 1}, {-1, 0}, {1, 0}});
+
+   Neighbors DIAGONAL_CARDINAL = offsets(new int[][] {
+      {-1, -1}, {1, 1}, {-1, 1}, {1, -1}, {0, -1}, {0, 1}, {-1, 0}, {1, 0}});
+
+   static Neighbors offsets(int[][] offsets)
+   {
+      return (x, y, visitor) -> {
+         for (int[] offset : offsets)
+         {
+            visitor.visit(x + offset[0], y + offset[1]);
+         }
+      };
+   }
+
+   static Neighbors of(Function<Point, Stream<Point>> potentialNeighbors)
+   {
+      return (x, y, visitor) -> potentialNeighbors.apply(new Point(x, y))
+         .forEach(point -> visitor.visit(point.x, point.y));
+   }
+
+   default Function<Point, Stream<Point>> asFunction()
+   {
+      return point -> {
+         Stream.Builder<Point> builder = Stream.builder();
+         forEach(point.x, point.y, (x, y) -> builder.add(new Point(x, y)));
+         return builder.build();
+      };
+   }
+}
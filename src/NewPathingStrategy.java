@@ -8,6 +8,19 @@ import java.util.stream.Stream;
 class NewPathingStrategy
         implements PathingStrategy
 {
+    //optional node budgets and memory of unreachable goals, null searches without limits
+    private final SearchLimits limits;
+
+    public NewPathingStrategy()
+    {
+        this(null);
+    }
+
+    public NewPathingStrategy(SearchLimits limits)
+    {
+        this.limits = limits;
+    }
+
     public List<Point> computePath(Point start, Point end,
                                    Predicate<Point> canPassThrough,
                                    BiPredicate<Point, Point> withinReach,
@@ -15,6 +28,16 @@ class NewPathingStrategy
     {
         List<Point> path = new LinkedList<>();
 
+        if (limits != null && limits.isUnreachable(start, end))
+        {
+            return path;
+        }
+        int budget = limits == null ? Integer.MAX_VALUE : limits.acquire();
+        int expanded = 0;
+        boolean exhausted = false;
+        //blocked cells around the explored region, only needed to remember unreachable goals
+        Set<Point> walls = limits == null ? null : new HashSet<>();
+
         //open list
         Map<Point,Node> openMap = new HashMap<>();
         Comparator<Node> sorter = Comparator.comparing(Node::getH);
@@ -29,13 +52,30 @@ class NewPathingStrategy
         //add to open list
         openMap.put(current.getPosition(), current);
         openQueue.add(current);
+        //expanded node nearest the goal, where a search cut short heads for
+        Node closest = current;
 
         //while target is not within reach
         while (!withinReach.test(current.getPosition(), end)){
 
+            //out of budget, take the best partial path
+            if (expanded == budget){
+                exhausted = true;
+                current = closest;
+                break;
+            }
+            expanded++;
+            if (current.getPosition().manhattanDist(end) < closest.getPosition().manhattanDist(end)){
+                closest = current;
+            }
+
             //get list of neighbour points
             List<Point> neighbours = potentialNeighbors.apply(current.getPosition())
-                    .filter(canPassThrough)
+                    .filter(n -> {
+                        if (canPassThrough.test(n)) return true;
+                        if (walls != null) walls.add(n);
+                        return false;
+                    })
                     .filter(p -> !closedMap.containsKey(p))
                     .collect(Collectors.toList());
 
@@ -58,9 +98,17 @@ class NewPathingStrategy
             if (openQueue.peek() != null){
                 current = openQueue.poll();
             } else { // if empty
+                //everything reachable was searched, the goal cannot be reached until a wall opens
+                if (limits != null){
+                    limits.release(budget, expanded, false);
+                    limits.markUnreachable(start, end, walls);
+                }
                 return path;
             }
         }
+        if (limits != null){
+            limits.release(budget, expanded, exhausted);
+        }
         while (current.getParent() != null) {
             path.add(0, current.getPosition());
             current = current.getParent();
@@ -10,6 +10,23 @@ public class Obstacle extends Entity {
     private static int maxObstacles = 120;
     private static int helper_count = 0;
     private static final int HELPER_LIMIT = 6;
+    // leaves and helpers placed by clicks so far, kept in world snapshots
+    public static int getObstacleCount() {
+        return numObstacles;
+    }
+
+    public static void setObstacleCount(int count) {
+        numObstacles = count;
+    }
+
+    public static int getHelperCount() {
+        return helper_count;
+    }
+
+    public static void setHelperCount(int count) {
+        helper_count = count;
+    }
+
     public Obstacle(String id, Point position,List<PImage> images)
     {
         super(id, position, images);
@@ -0,0 +1,9 @@
+/*
+OccupancyListener: told by WorldModel whenever a grid cell goes from empty to occupied
+or back, so incremental pathing strategies can repair just the affected part of a search
+ */
+
+interface OccupancyListener
+{
+   void occupancyChanged(Point pos);
+}
@@ -0,0 +1,91 @@
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+
+/*
+PathPlanner: parallel planning phase for the movers due in one scheduler batch
+Every Moves entity whose activity is due has its next step searched on a ForkJoinPool
+while the world is not being changed. The events then run one by one as usual and each
+mover commits its planned step only if nothing the search relied on has changed since
+(see MovePlan), so the outcome is the same as without a planner, whatever the number of
+threads. Register the planner with WorldModel.addOccupancyListener so it sees the cells
+each commit changes. Movers whose searches keep state between calls (D* Lite, flow
+fields) are not planned ahead and search on their turn.
+ */
+
+final class PathPlanner
+   implements OccupancyListener
+{
+   private ForkJoinPool pool;
+
+   // one per plan(); plans from an earlier batch are never used
+   private long batch;
+   // cells changed since this batch was planned, in order
+   private final List<Point> changes = new ArrayList<>();
+
+   public PathPlanner()
+   {
+      this(ForkJoinPool.commonPool());
+   }
+
+   public PathPlanner(ForkJoinPool pool)
+   {
+      this.pool = pool;
+   }
+
+   public long getBatch()
+   {
+      return batch;
+   }
+
+   public void plan(List<Event> batch)
+   {
+      this.batch++;
+      this.changes.clear();
+
+      Map<Moves, WorldModel> movers = new LinkedHashMap<>();
+      for (Event event : batch)
+      {
+         if (!event.isCancelled() && event.getAction() instanceof Activity)
+         {
+            Activity activity = (Activity)event.getAction();
+            if (activity.getEntity() instanceof Moves
+               && ((Moves)activity.getEntity()).canPlanAhead())
+            {
+               movers.put((Moves)activity.getEntity(), activity.getWorld());
+            }
+         }
+      }
+
+      // a single search gains nothing from a hand-off to the pool
+      if (movers.size() < 2)
+      {
+         return;
+      }
+
+      this.pool.submit(() -> movers.entrySet().parallelStream()
+              .forEach(mover -> mover.getKey().planNextPosition(mover.getValue(), this)))
+              .join();
+   }
+
+   /* whether none of cells has changed since the given batch was planned */
+   public boolean unchangedSince(long batch, Set<Point> cells)
+   {
+      if (batch != this.batch)
+      {
+         return false;
+      }
+      for (Point cell : this.changes)
+      {
+         if (cells.contains(cell))
+         {
+            return false;
+         }
+      }
+      return true;
+   }
+
+   public void occupancyChanged(Point pos)
+   {
+      this.changes.add(pos);
+   }
+}
@@ -0,0 +1,107 @@
+import java.util.List;
+import java.util.Random;
+import java.util.function.BiPredicate;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/*
+PathingBenchmark: expanded nodes and time of AStarPathingStrategy vs JumpPointPathingStrategy
+Both search the same seeded open maps (a few percent of cells blocked) between random
+start and goal cells with helper movement: eight neighbours, goal reached when cardinally
+adjacent. A* expansions are counted through its neighbour function, which it calls once per
+node it expands. Total path costs must match.
+
+   java PathingBenchmark [searches] [size ...]
+ */
+
+final class PathingBenchmark
+{
+   private static final int DEFAULT_SEARCHES = 200;
+   private static final int[] DEFAULT_SIZES = {64, 256, 512};
+   private static final double BLOCKED = 0.05;
+   private static final long SEED = 42;
+
+   // what helpers move with, so the benchmark searches the same neighbours
+   private static final Function<Point, Stream<Point>> DIAGONAL_CARDINAL_NEIGHBORS =
+      Neighbors.DIAGONAL_CARDINAL.asFunction();
+
+   private long expanded;
+   private long totalCost;
+   private long elapsed;
+
+   private void run(PathingStrategy strategy, int size, int searches)
+   {
+      Random rand = new Random(SEED);
+      boolean[][] blocked = new boolean[size][size];
+      for (int y = 0; y < size; y++)
+      {
+         for (int x = 0; x < size; x++)
+         {
+            blocked[y][x] = rand.nextDouble() < BLOCKED;
+         }
+      }
+
+      Predicate<Point> canPassThrough = p -> p.x >= 0 && p.x < size
+         && p.y >= 0 && p.y < size && !blocked[p.y][p.x];
+      BiPredicate<Point, Point> withinReach = (p1, p2) -> p1.adjacent(p2);
+      Function<Point, Stream<Point>> neighbors = p -> {
+         this.expanded++;
+         return DIAGONAL_CARDINAL_NEIGHBORS.apply(p);
+      };
+
+      for (int i = 0; i < searches; i++)
+      {
+         Point start = new Point(rand.nextInt(size), rand.nextInt(size));
+         Point end = new Point(rand.nextInt(size), rand.nextInt(size));
+
+         long begin = System.nanoTime();
+         List<Point> path = strategy.computePath(start, end, canPassThrough,
+            withinReach, neighbors);
+         this.elapsed += System.nanoTime() - begin;
+
+         Point previous = start;
+         for (Point step : path)
+         {
+            this.totalCost += previous.manhattanDist(step);
+            previous = step;
+         }
+      }
+   }
+
+   public static void main(String [] args)
+   {
+      int searches = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_SEARCHES;
+      int[] sizes = DEFAULT_SIZES;
+      if (args.length > 1)
+      {
+         sizes = new int[args.length - 1];
+         for (int i = 1; i < args.length; i++)
+         {
+            sizes[i - 1] = Integer.parseInt(args[i]);
+         }
+      }
+
+      for (int size : sizes)
+      {
+         PathingBenchmark astar = new PathingBenchmark();
+         astar.run(new AStarPathingStrategy(), size, searches);
+         report("astar", size, searches, astar.expanded, astar.elapsed, astar.totalCost);
+
+         JumpPointPathingStrategy strategy = new JumpPointPathingStrategy();
+         PathingBenchmark jps = new PathingBenchmark();
+         jps.run(strategy, size, searches);
+         report("jps", size, searches, strategy.getExpandedNodes(), jps.elapsed,
+            jps.totalCost);
+      }
+   }
+
+   private static void report(String name, int size, int searches, long expanded,
+      long elapsed, long totalCost)
+   {
+      System.out.println(String.format(
+         "%-5s %4dx%-4d %4d searches: %10d expanded (%8.1f per search) in %8.1f ms, total cost %d",
+         name, size, size, searches, expanded, (double)expanded / searches,
+         elapsed / 1e6, totalCost));
+   }
+}
@@ -25,4 +25,29 @@ interface PathingStrategy
                            Predicate<Point> canPassThrough,
                            BiPredicate<Point, Point> withinReach,
                            Function<Point, Stream<Point>> potentialNeighbors);
-}
\ No newline at end of file
+
+   /*
+    * The same search with neighbours generated through a Neighbors callback.
+    * Strategies that can walk them without allocating override this; the
+    * rest get them as a stream.
+    */
+   default List<Point> computePath(Point start, Point end,
+                                   Predicate<Point> canPassThrough,
+                                   BiPredicate<Point, Point> withinReach,
+                                   Neighbors neighbors)
+   {
+      return computePath(start, end, canPassThrough, withinReach,
+              neighbors.asFunction());
+   }
+
+   /*
+    * Whether a search may be made ahead of time, on any thread: its result
+    * depends only on its arguments and on what canPassThrough answers (and
+    * on SearchLimits, which planning knows about, see MovePlan).  Strategies
+    * that keep what they learn between searches say no.
+    */
+   default boolean canPlanAhead()
+   {
+      return true;
+   }
+}
@@ -1,55 +1,21 @@
-import processing.core.PImage;
-
-import java.util.List;
-
-
+/*
+Point: an immutable grid coordinate
+Pathing strategies keep their search state (g, h, f, prior) in their own per-search
+structures, so a Point can be shared freely, including across threads.
+ */
 
 final class Point
 {
+   private static final int D = 10;
+
    public final int x;
    public final int y;
-   private int g;  //dist from start node;
-   private int h;  //manhattan dist to destpos
-   private int f;  //g+h
-   private Point prior = null;
-   private final int D = 10;
 
    public Point(int x, int y)
    {
       this.x = x;
       this.y = y;
    }
-   public int getG() {
-      return g;
-   }
-
-   public void setG(int g) {
-      this.g = g;
-   }
-
-   public int getH() {
-      return h;
-   }
-
-   public void setH(int h) {
-      this.h = h;
-   }
-
-   public int getF() {
-      return f;
-   }
-
-   public void setF(int f) {
-      this.f = f;
-   }
-
-   public Point getPrior() {
-      return prior;
-   }
-
-   public void setPrior(Point prior) {
-      this.prior = prior;
-   }
 
    public int manhattanDist(Point end){
       return D * (Math.abs(this.x - end.x) +
@@ -17,7 +17,7 @@ public class Quake extends Stationary{
                                 WorldModel world, ImageStore imageStore)
     {
         scheduler.scheduleEvent(this, this.createActivityAction(world, imageStore), this.getActionPeriod());
-        scheduler.scheduleEvent(this, this.createAnimationAction(QUAKE_ANIMATION_REPEAT_COUNT), this.getAnimationPeriod());
+        scheduler.scheduleEvent(this, this.createAnimationAction(world, QUAKE_ANIMATION_REPEAT_COUNT), this.getAnimationPeriod());
 
     }
 }
@@ -0,0 +1,52 @@
+import java.util.Random;
+
+/*
+RestorableRandom: java.util.Random whose state can be read back and set again
+Runs the same 48 bit linear congruential generator as Random, so a seed gives exactly the
+numbers Random gives, but keeps the state in a field of its own. A WorldSnapshot stores it
+as one long instead of serializing the generator. The cached second value of
+nextGaussian is not part of the state; nothing in the world draws Gaussians.
+ */
+
+final class RestorableRandom extends Random
+{
+   private static final long serialVersionUID = 1L;
+   private static final long MULTIPLIER = 0x5DEECE66DL;
+   private static final long ADDEND = 0xBL;
+   private static final long MASK = (1L << 48) - 1;
+
+   // set by setSeed, which Random's constructors call, so no initializer here
+   private long state;
+
+   public RestorableRandom()
+   {
+      super();
+   }
+
+   public RestorableRandom(long seed)
+   {
+      super(seed);
+   }
+
+   public synchronized void setSeed(long seed)
+   {
+      super.setSeed(seed);
+      this.state = (seed ^ MULTIPLIER) & MASK;
+   }
+
+   public synchronized long getState()
+   {
+      return this.state;
+   }
+
+   public synchronized void setState(long state)
+   {
+      this.state = state & MASK;
+   }
+
+   protected synchronized int next(int bits)
+   {
+      this.state = (this.state * MULTIPLIER + ADDEND) & MASK;
+      return (int)(this.state >>> (48 - bits));
+   }
+}
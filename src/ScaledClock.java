@@ -0,0 +1,24 @@
+/*
+ScaledClock: real time sped up (or slowed down) by a constant factor
+A timeScale of 0.5 makes every action period pass in half the real time, which is how the
+-fast/-faster/-fastest flags are implemented.
+ */
+
+final class ScaledClock
+   implements Clock
+{
+   private long origin;
+   private double timeScale;
+
+   public ScaledClock(double timeScale)
+   {
+      this.origin = System.currentTimeMillis();
+      this.timeScale = timeScale;
+   }
+
+   public long currentTime()
+   {
+      long elapsed = System.currentTimeMillis() - this.origin;
+      return this.origin + (long)(elapsed / this.timeScale);
+   }
+}
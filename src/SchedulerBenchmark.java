@@ -0,0 +1,114 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/*
+SchedulerBenchmark: compares the EventQueue backends under entity churn
+Every entity reschedules itself with a random period when it fires, and some fraction of
+firings also unschedule and reschedule another entity (the way fruits get eaten and helpers
+transform). Both backends run the same seeded workload, so their checksums must match.
+
+   java SchedulerBenchmark [simulated ms] [entity count ...]
+ */
+
+final class SchedulerBenchmark
+{
+   private static final long DEFAULT_DURATION = 60000;
+   private static final int[] DEFAULT_SIZES = {1000, 10000, 30000};
+   private static final int MIN_PERIOD = 1;
+   private static final int MAX_PERIOD = 2000;
+   private static final double CHURN = 0.2;
+   private static final long SEED = 42;
+
+   private final Random rand = new Random(SEED);
+   private final List<BenchEntity> entities = new ArrayList<>();
+   private long fired;
+   private long checksum;
+
+   private final class BenchEntity extends ActiveEntity
+   {
+      private final int index;
+
+      BenchEntity(int index)
+      {
+         super("bench" + index, new Point(0, 0), null, 0);
+         this.index = index;
+      }
+
+      protected void executeActivity(WorldModel world,
+                                     ImageStore imageStore, EventScheduler scheduler)
+      {
+         fired++;
+         checksum = checksum * 31 + index;
+
+         if (rand.nextDouble() < CHURN)
+         {
+            BenchEntity other = entities.get(rand.nextInt(entities.size()));
+            if (other != this)
+            {
+               scheduler.unscheduleAllEvents(other);
+               other.scheduleActions(scheduler, null, null);
+            }
+         }
+         scheduleActions(scheduler, null, null);
+      }
+
+      protected void scheduleActions(EventScheduler scheduler,
+                                     WorldModel world, ImageStore imageStore)
+      {
+         scheduler.scheduleEvent(this, createActivityAction(world, imageStore),
+                 MIN_PERIOD + rand.nextInt(MAX_PERIOD - MIN_PERIOD));
+      }
+   }
+
+   private long run(boolean timingWheel, int size, long duration)
+   {
+      DiscreteClock clock = new DiscreteClock();
+      EventScheduler scheduler = timingWheel
+              ? new EventScheduler(clock, new TimingWheelEventQueue(clock.currentTime()))
+              : new EventScheduler(clock);
+
+      for (int i = 0; i < size; i++)
+      {
+         BenchEntity entity = new BenchEntity(i);
+         entities.add(entity);
+         entity.scheduleActions(scheduler, null, null);
+      }
+
+      long start = System.nanoTime();
+      for (long time = 0; time < duration; time += VirtualWorld.TIMER_ACTION_PERIOD)
+      {
+         clock.advanceTo(time);
+         scheduler.update();
+      }
+      return System.nanoTime() - start;
+   }
+
+   public static void main(String [] args)
+   {
+      long duration = args.length > 0 ? Long.parseLong(args[0]) : DEFAULT_DURATION;
+      int[] sizes = DEFAULT_SIZES;
+      if (args.length > 1)
+      {
+         sizes = new int[args.length - 1];
+         for (int i = 1; i < args.length; i++)
+         {
+            sizes[i - 1] = Integer.parseInt(args[i]);
+         }
+      }
+
+      for (int size : sizes)
+      {
+         for (boolean timingWheel : new boolean[] {false, true})
+         {
+            SchedulerBenchmark bench = new SchedulerBenchmark();
+            long elapsed = bench.run(timingWheel, size, duration);
+            System.out.println(String.format(
+                    "%-6s %7d entities: %9d events in %8.1f ms (%6.0f ns/event) checksum %016x",
+                    timingWheel ? "wheel" : "heap", size, bench.fired,
+                    elapsed / 1e6, (double)elapsed / Math.max(bench.fired, 1),
+                    bench.checksum));
+         }
+      }
+   }
+}
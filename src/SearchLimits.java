@@ -0,0 +1,156 @@
+import java.util.*;
+
+/*
+SearchLimits: bounds the work pathing strategies do for movers
+Each search may expand at most perSearch nodes, and all searches in one scheduler update
+share perTick expansions between them, however far a real time clock moves during it; a
+strategy that runs out returns the best partial path it has (towards the node closest to
+the goal) and the mover carries on from there next time.
+
+A search that runs dry without reaching the goal proves the goal unreachable from its start.
+That is remembered, together with the blocked cells around the region it explored, and
+asking again answers empty at once until one of those cells changes (reported through
+OccupancyListener), since nothing else can open a way in.
+
+While a MovePlan is being made, a search is granted perSearch whatever the tick has left
+and changes nothing here. Its share of the tick, the goals it proved unreachable and its
+counts are settled when the plan commits, which it only does if what the tick has left
+by then would have let it run the same, so runs with a planner match runs without.
+ */
+
+final class SearchLimits
+   implements OccupancyListener
+{
+   private static final int MAX_UNREACHABLE = 256;
+
+   private int perSearch;
+   private int perTick;
+   private EventScheduler scheduler;
+
+   private long tickUpdate = -1;
+   private int tickRemaining;
+
+   // start and goal of hopeless searches, to the cells that could change that
+   private Map<List<Point>, Set<Point>> unreachable;
+   private long unreachableHits;
+   private long budgetExhausted;
+
+   public SearchLimits(int perSearch, int perTick, EventScheduler scheduler)
+   {
+      this.perSearch = perSearch;
+      this.perTick = perTick;
+      this.scheduler = scheduler;
+      this.unreachable = new LinkedHashMap<List<Point>, Set<Point>>(16, 0.75f, true)
+      {
+         protected boolean removeEldestEntry(Map.Entry<List<Point>, Set<Point>> eldest)
+         {
+            return size() > MAX_UNREACHABLE;
+         }
+      };
+   }
+
+   public synchronized long getUnreachableHits()
+   {
+      return unreachableHits;
+   }
+
+   public synchronized long getBudgetExhausted()
+   {
+      return budgetExhausted;
+   }
+
+   /*
+      Expansions the next search may use; zero when the tick's share is gone
+   */
+   public synchronized int acquire()
+   {
+      if (MovePlan.current() != null)
+      {
+         return this.perSearch;
+      }
+      int granted = grantable();
+      this.tickRemaining -= granted;
+      return granted;
+   }
+
+   /* what acquire would grant now */
+   private synchronized int grantable()
+   {
+      long update = this.scheduler.getUpdateCount();
+      if (update != this.tickUpdate)
+      {
+         this.tickUpdate = update;
+         this.tickRemaining = this.perTick;
+      }
+      return Math.min(this.perSearch, this.tickRemaining);
+   }
+
+   /*
+      Gives back what a search was granted but did not use; exhausted says
+      it stopped because the grant ran out
+   */
+   public synchronized void release(int granted, int used, boolean exhausted)
+   {
+      MovePlan plan = MovePlan.current();
+      if (plan != null)
+      {
+         // searches stop at their grant and not before, so any grant that
+         // covers what this one used gives the same result
+         plan.check(() -> grantable() >= used);
+         MovePlan.whenCommitted(() -> release(acquire(), used, exhausted));
+         return;
+      }
+      if (this.tickUpdate == this.scheduler.getUpdateCount())
+      {
+         this.tickRemaining += Math.max(granted - used, 0);
+      }
+      if (exhausted)
+      {
+         this.budgetExhausted++;
+      }
+   }
+
+   public synchronized boolean isUnreachable(Point start, Point end)
+   {
+      List<Point> key = Arrays.asList(start, end);
+      boolean known = isRemembered(key);
+      MovePlan plan = MovePlan.current();
+      if (plan != null)
+      {
+         plan.check(() -> isRemembered(key) == known);
+      }
+      if (known)
+      {
+         MovePlan.whenCommitted(this::countUnreachableHit);
+      }
+      return known;
+   }
+
+   private synchronized boolean isRemembered(List<Point> key)
+   {
+      return this.unreachable.containsKey(key);
+   }
+
+   private synchronized void countUnreachableHit()
+   {
+      this.unreachableHits++;
+   }
+
+   /*
+      walls are the blocked cells next to everything the search reached
+   */
+   public void markUnreachable(Point start, Point end, Set<Point> walls)
+   {
+      MovePlan.whenCommitted(() -> remember(Arrays.asList(start, end), walls));
+   }
+
+   private synchronized void remember(List<Point> key, Set<Point> walls)
+   {
+      this.unreachable.put(key, walls);
+   }
+
+   public synchronized void occupancyChanged(Point pos)
+   {
+      this.unreachable.values().removeIf(walls -> walls.contains(pos));
+   }
+}
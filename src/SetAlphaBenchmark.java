@@ -0,0 +1,154 @@
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import javax.imageio.ImageIO;
+
+import processing.core.PImage;
+
+/*
+SetAlphaBenchmark: colour keying with the old per-pixel branch vs ImageStore.keyPixels
+Keys white out of every image ImageIO can read in the images directory, first image by
+image as loading does, then as one 4096 pixel wide sheet of all of them repeated to about
+sheet pixels, which ImageStore.setAlpha splits across the common pool. Both ways must key
+exactly the same pixels.
+
+   java SetAlphaBenchmark [passes] [sheet pixels] [images directory]
+ */
+
+final class SetAlphaBenchmark
+{
+   private static final int DEFAULT_PASSES = 200;
+   private static final int DEFAULT_SHEET_PIXELS = 1 << 24;
+   private static final String DEFAULT_DIRECTORY = "images";
+   private static final int MASK_COLOR = 0xffffffff;
+   private static final int WARMUP_PASSES = 20;
+   private static final int SHEET_WIDTH = 4096;
+
+   /* the loop setAlpha used to run */
+   private static void branchy(int[] pixels, int maskColor, int alpha)
+   {
+      int alphaValue = alpha << 24;
+      int nonAlpha = maskColor & ImageStore.COLOR_MASK;
+      for (int i = 0; i < pixels.length; i++)
+      {
+         if ((pixels[i] & ImageStore.COLOR_MASK) == nonAlpha)
+         {
+            pixels[i] = alphaValue | nonAlpha;
+         }
+      }
+   }
+
+   private static List<int[]> loadImages(File directory) throws IOException
+   {
+      List<int[]> images = new ArrayList<>();
+      File[] files = directory.listFiles();
+      if (files == null)
+      {
+         throw new IOException("no such directory: " + directory);
+      }
+      Arrays.sort(files);
+      for (File file : files)
+      {
+         BufferedImage image = ImageIO.read(file);
+         if (image != null)
+         {
+            images.add(image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0,
+               image.getWidth()));
+         }
+      }
+      return images;
+   }
+
+   public static void main(String [] args) throws IOException
+   {
+      int passes = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PASSES;
+      int sheetPixels = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_SHEET_PIXELS;
+      File directory = new File(args.length > 2 ? args[2] : DEFAULT_DIRECTORY);
+
+      List<int[]> images = loadImages(directory);
+      long pixels = 0;
+      for (int[] image : images)
+      {
+         pixels += image.length;
+      }
+      System.out.println(String.format("%d images, %d pixels", images.size(), pixels));
+
+      int sheetHeight = Math.max(sheetPixels / SHEET_WIDTH, 1);
+      int[] sheet = new int[SHEET_WIDTH * sheetHeight];
+      for (int at = 0; at < sheet.length; )
+      {
+         for (int[] image : images)
+         {
+            int count = Math.min(image.length, sheet.length - at);
+            System.arraycopy(image, 0, sheet, at, count);
+            at += count;
+         }
+      }
+
+      ImageStore store = new ImageStore(new PImage(1, 1));
+      PImage sheetImage = new PImage(SHEET_WIDTH, sheetHeight);
+
+      for (int round = 0; round < 2; round++)
+      {
+         boolean report = round == 1;
+         int runs = report ? passes : WARMUP_PASSES;
+
+         long branchyTime = 0;
+         long keyedTime = 0;
+         int mismatches = 0;
+         for (int pass = 0; pass < runs; pass++)
+         {
+            for (int[] image : images)
+            {
+               int[] expected = image.clone();
+               int[] actual = image.clone();
+               long begin = System.nanoTime();
+               branchy(expected, MASK_COLOR, 0);
+               long middle = System.nanoTime();
+               ImageStore.keyPixels(actual, 0, actual.length, MASK_COLOR, 0);
+               keyedTime += System.nanoTime() - middle;
+               branchyTime += middle - begin;
+               mismatches += Arrays.equals(expected, actual) ? 0 : 1;
+            }
+         }
+         if (report)
+         {
+            report("images", pixels * runs, branchyTime, keyedTime, mismatches);
+         }
+
+         int sheetRuns = Math.max(runs / 20, 1);
+         branchyTime = 0;
+         keyedTime = 0;
+         mismatches = 0;
+         for (int pass = 0; pass < sheetRuns; pass++)
+         {
+            int[] expected = sheet.clone();
+            System.arraycopy(sheet, 0, sheetImage.pixels, 0, sheet.length);
+            long begin = System.nanoTime();
+            branchy(expected, MASK_COLOR, 0);
+            long middle = System.nanoTime();
+            store.setAlpha(sheetImage, MASK_COLOR, 0);
+            keyedTime += System.nanoTime() - middle;
+            branchyTime += middle - begin;
+            mismatches += Arrays.equals(expected, sheetImage.pixels) ? 0 : 1;
+         }
+         if (report)
+         {
+            report("sheet", (long)sheet.length * sheetRuns, branchyTime, keyedTime, mismatches);
+         }
+      }
+   }
+
+   private static void report(String name, long pixels, long branchyTime, long keyedTime,
+      int mismatches)
+   {
+      System.out.println(String.format(
+         "%-6s %12d pixels: branch %8.1f ms (%.2f ns/px), keyed %8.1f ms (%.2f ns/px), %.1fx, %d mismatches",
+         name, pixels, branchyTime / 1e6, (double)branchyTime / pixels,
+         keyedTime / 1e6, (double)keyedTime / pixels,
+         (double)branchyTime / Math.max(keyedTime, 1), mismatches));
+   }
+}
@@ -0,0 +1,205 @@
+import java.util.*;
+
+/*
+SpatialIndex: uniform grid buckets over the entities of one class
+WorldModel keeps one per entity class so findNearest only looks at cells around the query
+point, growing outwards ring by ring until nothing closer can exist. Ties go to the entity
+added first, the same answer a scan of the world's entity set gives.
+ */
+
+final class SpatialIndex
+{
+   public static final int CELL_SIZE = 8;
+
+   /* below this many entities a plain scan beats walking empty cells */
+   private static final int LINEAR_SCAN_LIMIT = 32;
+
+   private int cellCols;
+   private int cellRows;
+   private Map<Integer, List<Entity>> cells;
+   private Map<Entity, Slot> slots;
+   private long nextOrder;
+
+   private static final class Slot
+   {
+      private int cell;
+      private final long order;
+
+      Slot(int cell, long order)
+      {
+         this.cell = cell;
+         this.order = order;
+      }
+   }
+
+   public SpatialIndex(int numRows, int numCols)
+   {
+      this.cellCols = Math.max(1, (numCols + CELL_SIZE - 1) / CELL_SIZE);
+      this.cellRows = Math.max(1, (numRows + CELL_SIZE - 1) / CELL_SIZE);
+      this.cells = new HashMap<>();
+      this.slots = new LinkedHashMap<>();
+   }
+
+   public int size()
+   {
+      return this.slots.size();
+   }
+
+   public boolean contains(Entity entity)
+   {
+      return this.slots.containsKey(entity);
+   }
+
+   /* entities in the order they were added */
+   public Collection<Entity> getEntities()
+   {
+      return Collections.unmodifiableSet(this.slots.keySet());
+   }
+
+   public void add(Entity entity)
+   {
+      if (this.slots.containsKey(entity))
+      {
+         return;
+      }
+
+      int cell = cellOf(entity.getPosition());
+      this.slots.put(entity, new Slot(cell, this.nextOrder++));
+      this.cells.computeIfAbsent(cell, c -> new ArrayList<>()).add(entity);
+   }
+
+   public void remove(Entity entity)
+   {
+      Slot slot = this.slots.remove(entity);
+
+      if (slot != null)
+      {
+         removeFromCell(entity, slot.cell);
+      }
+   }
+
+   public void move(Entity entity, Point to)
+   {
+      Slot slot = this.slots.get(entity);
+      int cell = cellOf(to);
+
+      if (slot != null && slot.cell != cell)
+      {
+         removeFromCell(entity, slot.cell);
+         this.cells.computeIfAbsent(cell, c -> new ArrayList<>()).add(entity);
+         slot.cell = cell;
+      }
+   }
+
+   public Optional<Entity> nearest(Point pos)
+   {
+      if (this.slots.size() <= LINEAR_SCAN_LIMIT)
+      {
+         return nearestByScan(pos);
+      }
+
+      int cx = clamp(Math.floorDiv(pos.x, CELL_SIZE), this.cellCols);
+      int cy = clamp(Math.floorDiv(pos.y, CELL_SIZE), this.cellRows);
+      int maxRing = Math.max(Math.max(cx, this.cellCols - 1 - cx),
+              Math.max(cy, this.cellRows - 1 - cy));
+
+      Entity best = null;
+      int bestDistance = Integer.MAX_VALUE;
+      long bestOrder = Long.MAX_VALUE;
+      int seen = 0;
+
+      for (int ring = 0; ring <= maxRing; ring++)
+      {
+         for (int y = cy - ring; y <= cy + ring; y++)
+         {
+            if (y < 0 || y >= this.cellRows)
+            {
+               continue;
+            }
+            /* only the border of the ring: full rows at the top and bottom */
+            int step = (y == cy - ring || y == cy + ring) ? 1 : Math.max(1, 2 * ring);
+            for (int x = cx - ring; x <= cx + ring; x += step)
+            {
+               if (x < 0 || x >= this.cellCols)
+               {
+                  continue;
+               }
+               List<Entity> cell = this.cells.get(y * this.cellCols + x);
+               if (cell == null)
+               {
+                  continue;
+               }
+               for (Entity other : cell)
+               {
+                  int distance = distanceSquared(other.getPosition(), pos);
+                  long order = this.slots.get(other).order;
+                  if (distance < bestDistance
+                          || (distance == bestDistance && order < bestOrder))
+                  {
+                     best = other;
+                     bestDistance = distance;
+                     bestOrder = order;
+                  }
+               }
+               seen += cell.size();
+            }
+         }
+
+         /* anything in the next ring is at least this far away */
+         long bound = (long)ring * CELL_SIZE + 1;
+         if (seen == this.slots.size() || (best != null && bestDistance < bound * bound))
+         {
+            break;
+         }
+      }
+
+      return Optional.ofNullable(best);
+   }
+
+   private Optional<Entity> nearestByScan(Point pos)
+   {
+      Entity best = null;
+      int bestDistance = Integer.MAX_VALUE;
+
+      for (Entity other : this.slots.keySet())
+      {
+         int distance = distanceSquared(other.getPosition(), pos);
+         if (distance < bestDistance)
+         {
+            best = other;
+            bestDistance = distance;
+         }
+      }
+      return Optional.ofNullable(best);
+   }
+
+   private void removeFromCell(Entity entity, int cell)
+   {
+      List<Entity> current = this.cells.get(cell);
+      current.remove(entity);
+      if (current.isEmpty())
+      {
+         this.cells.remove(cell);
+      }
+   }
+
+   private int cellOf(Point pos)
+   {
+      int cx = clamp(Math.floorDiv(pos.x, CELL_SIZE), this.cellCols);
+      int cy = clamp(Math.floorDiv(pos.y, CELL_SIZE), this.cellRows);
+      return cy * this.cellCols + cx;
+   }
+
+   private static int clamp(int value, int count)
+   {
+      return Math.min(count - 1, Math.max(value, 0));
+   }
+
+   private static int distanceSquared(Point p1, Point p2)
+   {
+      int deltaX = p1.x - p2.x;
+      int deltaY = p1.y - p2.y;
+
+      return deltaX * deltaX + deltaY * deltaY;
+   }
+}
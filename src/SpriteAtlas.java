@@ -0,0 +1,143 @@
+import java.util.*;
+
+import processing.core.PConstants;
+import processing.core.PGraphics;
+import processing.core.PImage;
+
+/*
+SpriteAtlas: frames packed into a few large pages
+Frames are copied onto PAGE_SIZE x PAGE_SIZE pages shelf by shelf (tallest first, each
+shelf as tall as its first frame) with a GUTTER of clear pixels around each, so a filtering
+renderer never samples a neighbour. Drawing a frame draws its region of the page, so a whole
+view is drawn from one or two textures instead of one per frame. A frame too big for a page,
+or not packed at all, is drawn on its own.
+ */
+
+final class SpriteAtlas
+{
+   public static final int PAGE_SIZE = 1024;
+   private static final int GUTTER = 1;
+
+   private final List<PImage> pages;
+   private final Map<PImage, Region> regions;
+
+   /* where a frame lives: page and top left corner on it */
+   private static final class Region
+   {
+      private final PImage page;
+      private final int u;
+      private final int v;
+
+      Region(PImage page, int u, int v)
+      {
+         this.page = page;
+         this.u = u;
+         this.v = v;
+      }
+   }
+
+   private SpriteAtlas()
+   {
+      this.pages = new ArrayList<>();
+      // frames are told apart by identity, two loads of one file are two frames
+      this.regions = new IdentityHashMap<>();
+   }
+
+   public static SpriteAtlas pack(Collection<PImage> frames)
+   {
+      SpriteAtlas atlas = new SpriteAtlas();
+      List<PImage> byHeight = new ArrayList<>(frames);
+      byHeight.sort((a, b) -> Integer.compare(b.height, a.height));
+
+      PImage page = null;
+      int x = 0;
+      int y = 0;
+      int shelfHeight = 0;
+      for (PImage frame : byHeight)
+      {
+         int width = frame.width + 2 * GUTTER;
+         int height = frame.height + 2 * GUTTER;
+         if (width > PAGE_SIZE || height > PAGE_SIZE || atlas.regions.containsKey(frame))
+         {
+            continue;
+         }
+
+         if (page != null && x + width > PAGE_SIZE)
+         {
+            x = 0;
+            y += shelfHeight;
+            shelfHeight = 0;
+         }
+         if (page == null || y + height > PAGE_SIZE)
+         {
+            page = atlas.newPage();
+            x = 0;
+            y = 0;
+            shelfHeight = 0;
+         }
+
+         atlas.place(page, frame, x + GUTTER, y + GUTTER);
+         x += width;
+         shelfHeight = Math.max(shelfHeight, height);
+      }
+
+      for (PImage filled : atlas.pages)
+      {
+         filled.updatePixels();
+      }
+      return atlas;
+   }
+
+   public int getPageCount()
+   {
+      return this.pages.size();
+   }
+
+   public boolean contains(PImage frame)
+   {
+      return this.regions.containsKey(frame);
+   }
+
+   /* draws frame with its top left corner at (x, y) */
+   public void draw(PGraphics target, PImage frame, float x, float y)
+   {
+      Region region = this.regions.get(frame);
+      if (region == null)
+      {
+         target.image(frame, x, y);
+      }
+      else
+      {
+         target.image(region.page, x, y, frame.width, frame.height,
+            region.u, region.v, region.u + frame.width, region.v + frame.height);
+      }
+   }
+
+   private PImage newPage()
+   {
+      PImage page = new PImage(PAGE_SIZE, PAGE_SIZE, PConstants.ARGB);
+      page.loadPixels();
+      this.pages.add(page);
+      return page;
+   }
+
+   private void place(PImage page, PImage frame, int u, int v)
+   {
+      frame.loadPixels();
+      boolean opaque = frame.format != PConstants.ARGB;
+      for (int row = 0; row < frame.height; row++)
+      {
+         int to = (v + row) * PAGE_SIZE + u;
+         System.arraycopy(frame.pixels, row * frame.width, page.pixels, to, frame.width);
+         if (opaque)
+         {
+            // RGB frames may leave the alpha byte unset
+            for (int i = to; i < to + frame.width; i++)
+            {
+               page.pixels[i] |= 0xff000000;
+            }
+         }
+      }
+      this.regions.put(frame, new Region(page, u, v));
+   }
+}
@@ -0,0 +1,307 @@
+import java.util.*;
+import java.util.function.Consumer;
+
+/*
+TimingWheelEventQueue: hierarchical timing wheel backend for the EventScheduler
+Level 0 has one slot per millisecond, each level above covers 64 slots of the level below.
+Scheduling is O(1) into an unordered slot list; events further out than the top level wait
+in an overflow list. When the cursor reaches a level-0 slot its events (which all share one
+time) are sorted by sequence into the due list, so they still come out in EventComparator
+order.
+ */
+
+final class TimingWheelEventQueue
+   implements EventQueue
+{
+   private static final int SLOT_BITS = 6;
+   private static final int SLOTS = 1 << SLOT_BITS;
+   private static final int SLOT_MASK = SLOTS - 1;
+   private static final int LEVELS = 4;
+
+   private List<List<Event>> buckets;
+   private long[] occupied;
+   private int[] levelCounts;
+   private List<Event> overflow;
+   private EventComparator comparator;
+
+   /* sorted from dueHead on */
+   private List<Event> due;
+   private int dueHead;
+
+   /* every event before the cursor is in the due list */
+   private long cursor;
+   private int size;
+
+   public TimingWheelEventQueue(long startTime)
+   {
+      this.buckets = new ArrayList<>(LEVELS * SLOTS);
+      for (int i = 0; i < LEVELS * SLOTS; i++)
+      {
+         this.buckets.add(new ArrayList<>());
+      }
+      this.occupied = new long[LEVELS];
+      this.levelCounts = new int[LEVELS];
+      this.overflow = new ArrayList<>();
+      this.comparator = new EventComparator();
+      this.due = new ArrayList<>();
+      this.cursor = startTime;
+   }
+
+   public void add(Event event)
+   {
+      place(event);
+      this.size++;
+   }
+
+   public void compact()
+   {
+      for (int level = 0; level < LEVELS; level++)
+      {
+         for (int slot = 0; slot < SLOTS; slot++)
+         {
+            List<Event> current = bucket(level, slot);
+            int before = current.size();
+
+            if (current.removeIf(Event::isCancelled))
+            {
+               this.levelCounts[level] -= before - current.size();
+               this.size -= before - current.size();
+               if (current.isEmpty())
+               {
+                  this.occupied[level] &= ~(1L << slot);
+               }
+            }
+         }
+      }
+
+      int before = this.overflow.size();
+      this.overflow.removeIf(Event::isCancelled);
+      this.size -= before - this.overflow.size();
+
+      List<Event> live = new ArrayList<>(this.due.subList(this.dueHead, this.due.size()));
+      this.size -= live.size();
+      live.removeIf(Event::isCancelled);
+      this.size += live.size();
+      this.due = live;
+      this.dueHead = 0;
+   }
+
+   public Event pollBefore(long time)
+   {
+      Event next = firstDue();
+      if (next == null)
+      {
+         advance(time);
+         next = firstDue();
+      }
+
+      if (next != null && next.getTime() < time)
+      {
+         this.dueHead++;
+         this.size--;
+         return next;
+      }
+      return null;
+   }
+
+   public Event peek()
+   {
+      Event next = firstDue();
+      if (next != null)
+      {
+         return next;
+      }
+
+      /* occupied slots at a level are all later than anything below it */
+      for (int level = 0; level < LEVELS; level++)
+      {
+         if (this.levelCounts[level] > 0)
+         {
+            long mask = this.occupied[level] & (-1L << slotOf(this.cursor, level));
+            int slot = Long.numberOfTrailingZeros(mask);
+            return Collections.min(bucket(level, slot), this.comparator);
+         }
+      }
+
+      return this.overflow.isEmpty()
+              ? null : Collections.min(this.overflow, this.comparator);
+   }
+
+   public int size()
+   {
+      return this.size;
+   }
+
+   public void forEach(Consumer<Event> visitor)
+   {
+      this.due.subList(this.dueHead, this.due.size()).forEach(visitor);
+      for (List<Event> bucket : this.buckets)
+      {
+         bucket.forEach(visitor);
+      }
+      this.overflow.forEach(visitor);
+   }
+
+   private Event firstDue()
+   {
+      if (this.dueHead < this.due.size())
+      {
+         return this.due.get(this.dueHead);
+      }
+      this.due.clear();
+      this.dueHead = 0;
+      return null;
+   }
+
+   /*
+      Moves the cursor towards limit until at least one event is due
+   */
+   private void advance(long limit)
+   {
+      while (this.cursor < limit && this.due.isEmpty())
+      {
+         if (this.size == 0)
+         {
+            moveCursor(limit);
+            return;
+         }
+
+         int slot = slotOf(this.cursor, 0);
+         if ((this.occupied[0] & (1L << slot)) != 0)
+         {
+            List<Event> current = bucket(0, slot);
+            current.sort(this.comparator);
+            this.due.addAll(current);
+            this.levelCounts[0] -= current.size();
+            current.clear();
+            this.occupied[0] &= ~(1L << slot);
+            moveCursor(this.cursor + 1);
+         }
+         else
+         {
+            moveCursor(Math.min(nextInterestingTime(), limit));
+         }
+      }
+   }
+
+   /*
+      The next time at which either a level-0 slot has events or a higher
+      level has a slot to cascade down.  Nothing happens before it.
+   */
+   private long nextInterestingTime()
+   {
+      for (int level = 0; level < LEVELS; level++)
+      {
+         int bits = SLOT_BITS * level;
+         long rotationStart = (this.cursor >> (bits + SLOT_BITS)) << (bits + SLOT_BITS);
+
+         if (this.levelCounts[level] > 0)
+         {
+            long mask = this.occupied[level] & (-1L << slotOf(this.cursor, level));
+            int slot = Long.numberOfTrailingZeros(mask);
+            return rotationStart + ((long)slot << bits);
+         }
+      }
+      /* only the overflow is left, go to the next top level rotation */
+      int topBits = SLOT_BITS * LEVELS;
+      return ((this.cursor >> topBits) + 1) << topBits;
+   }
+
+   private void moveCursor(long time)
+   {
+      this.cursor = time;
+
+      if ((time & ((1L << (SLOT_BITS * LEVELS)) - 1)) == 0)
+      {
+         List<Event> waiting = new ArrayList<>(this.overflow);
+         this.overflow.clear();
+         for (Event event : waiting)
+         {
+            place(event);
+         }
+      }
+      for (int level = LEVELS - 1; level > 0; level--)
+      {
+         if ((time & ((1L << (SLOT_BITS * level)) - 1)) == 0)
+         {
+            cascade(level);
+         }
+      }
+   }
+
+   /*
+      Redistributes the slot at the cursor on the given level into the
+      levels below it
+   */
+   private void cascade(int level)
+   {
+      int slot = slotOf(this.cursor, level);
+      List<Event> current = bucket(level, slot);
+
+      if (current.isEmpty())
+      {
+         return;
+      }
+
+      List<Event> moving = new ArrayList<>(current);
+      current.clear();
+      this.levelCounts[level] -= moving.size();
+      this.occupied[level] &= ~(1L << slot);
+      for (Event event : moving)
+      {
+         place(event);
+      }
+   }
+
+   private void place(Event event)
+   {
+      long time = event.getTime();
+
+      if (time < this.cursor)
+      {
+         addOverdue(event);
+         return;
+      }
+
+      for (int level = 0; level < LEVELS; level++)
+      {
+         int above = SLOT_BITS * (level + 1);
+         if ((time >> above) == (this.cursor >> above))
+         {
+            int slot = slotOf(time, level);
+            bucket(level, slot).add(event);
+            this.occupied[level] |= 1L << slot;
+            this.levelCounts[level]++;
+            return;
+         }
+      }
+
+      this.overflow.add(event);
+   }
+
+   /*
+      An event for a time the cursor has already passed goes straight into
+      the due list.  It is normally the latest entry there, so this rarely
+      has to shift anything.
+   */
+   private void addOverdue(Event event)
+   {
+      int index = this.due.size();
+      while (index > this.dueHead
+              && this.comparator.compare(this.due.get(index - 1), event) > 0)
+      {
+         index--;
+      }
+      this.due.add(index, event);
+   }
+
+   private List<Event> bucket(int level, int slot)
+   {
+      return this.buckets.get(level * SLOTS + slot);
+   }
+
+   private static int slotOf(long time, int level)
+   {
+      return (int)(time >> (SLOT_BITS * level)) & SLOT_MASK;
+   }
+}
@@ -1,7 +1,6 @@
 import processing.core.PImage;
 
 import java.util.List;
-import java.util.Optional;
 
 public class Tree extends ActiveEntity{
     public static final String FISH_KEY = "fish";
@@ -18,8 +17,7 @@ public class Tree extends ActiveEntity{
                                       ImageStore imageStore, EventScheduler scheduler)
     {
 
-        Optional<Entity> mainChar = world.findNearest(getPosition(), MainCollector.class);
-        if (mainChar.isPresent()) {
+        if (world.getEntityCount(MainCollector.class) > 0) {
             int x = Functions.rand.nextInt(23);
             int y = Functions.rand.nextInt(14);
             Point point = new Point(x, y);
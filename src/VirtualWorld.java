@@ -1,5 +1,8 @@
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.Random;
 import java.util.Scanner;
 import processing.core.*;
@@ -22,8 +25,8 @@ public final class VirtualWorld
 
    private static final int VIEW_WIDTH = 1200;
    private static final int VIEW_HEIGHT = 750;
-   private static final int TILE_WIDTH = 50;
-   private static final int TILE_HEIGHT = 50;
+   public static final int TILE_WIDTH = 50;
+   public static final int TILE_HEIGHT = 50;
    private static final int WORLD_WIDTH_SCALE = 1;
    private static final int WORLD_HEIGHT_SCALE = 1;
 
@@ -33,19 +36,38 @@ public final class VirtualWorld
    public static final int WORLD_ROWS = VIEW_ROWS * WORLD_HEIGHT_SCALE;
 
    public static final String IMAGE_LIST_FILE_NAME = "imagelist";
+   public static final String IMAGE_CACHE_FILE_NAME = "imagelist.cache";
    public static final String DEFAULT_IMAGE_NAME = "background_default";
    public static final int DEFAULT_IMAGE_COLOR = 0x808080;
 
    public static final String LOAD_FILE_NAME = "world.sav";
+   public static final String SNAPSHOT_FILE_NAME = "world.snapshot";
+   public static final char SAVE_KEY = 's';
 
    public static final String FAST_FLAG = "-fast";
    public static final String FASTER_FLAG = "-faster";
    public static final String FASTEST_FLAG = "-fastest";
+   public static final String GRID_PATH_FLAG = "-gridpath";
+   public static final String PARALLEL_FLAG = "-parallel";
+   public static final String DSTAR_FLAG = "-dstar";
+   public static final String FLOW_FIELD_FLAG = "-flowfield";
+   public static final String JPS_FLAG = "-jps";
+   public static final String BOUNDED_FLAG = "-bounded";
+   public static final String RESUME_FLAG = "-resume";
+   public static final int SEARCH_BUDGET = 2000;
+   public static final int TICK_SEARCH_BUDGET = 20000;
    public static final double FAST_SCALE = 0.5;
    public static final double FASTER_SCALE = 0.25;
    public static final double FASTEST_SCALE = 0.10;
 
    public static double timeScale = 1.0;
+   public static boolean gridPathing = false;
+   public static boolean parallelPlanning = false;
+   public static boolean incrementalPathing = false;
+   public static boolean flowFieldPathing = false;
+   public static boolean jumpPointPathing = false;
+   public static boolean boundedPathing = false;
+   public static boolean resumeSnapshot = false;
 
    private ImageStore imageStore;
    private WorldModel world;
@@ -71,11 +93,42 @@ public final class VirtualWorld
       this.view = new WorldView(VIEW_ROWS, VIEW_COLS, this, world,
          TILE_WIDTH, TILE_HEIGHT);
       this.scheduler = new EventScheduler(timeScale);
+      if (gridPathing)
+      {
+         Helper.setDefaultStrategy(
+            new GridAStarPathingStrategy(WORLD_ROWS, WORLD_COLS));
+      }
+      if (incrementalPathing)
+      {
+         DStarLitePathingStrategy strategy = new DStarLitePathingStrategy();
+         world.addOccupancyListener(strategy);
+         Helper.setDefaultStrategy(strategy);
+      }
+      if (boundedPathing)
+      {
+         useSearchLimits(world, scheduler);
+      }
+      if (jumpPointPathing)
+      {
+         Helper.setStrategy(HelperNotFull.class, new JumpPointPathingStrategy());
+      }
+      if (flowFieldPathing)
+      {
+         Moves.setFlowFields(new FlowFieldService(world, scheduler));
+      }
+      if (parallelPlanning)
+      {
+         usePathPlanner(world, scheduler);
+      }
 
       loadImages(IMAGE_LIST_FILE_NAME, imageStore, this);
-      loadWorld(world, LOAD_FILE_NAME, imageStore);
+      view.setAtlas(imageStore.getAtlas());
+      if (!resumeSnapshot || !resume(SNAPSHOT_FILE_NAME))
+      {
+         loadWorld(world, LOAD_FILE_NAME, imageStore);
 
-      scheduleActions(world, scheduler, imageStore);
+         scheduleActions(world, scheduler, imageStore);
+      }
 
       next_time = System.currentTimeMillis() + TIMER_ACTION_PERIOD;
    }
@@ -85,17 +138,22 @@ public final class VirtualWorld
       long time = System.currentTimeMillis();
       if (time >= next_time)
       {
-         scheduler.updateOnTime(time);
+         scheduler.update();
          next_time = time + TIMER_ACTION_PERIOD;
       }
 
-      view.drawViewport();
-
-
-      if (world.findNearest(new Point(0, 0), MainCollector.class).isPresent()){
+      if (world.getEntityCount(MainCollector.class) > 0){
+         String collected = "Fruits collected: " + world.getFruitsCollected();
          textSize(20);
-         text("Fruits collected: " + world.getFruitsCollected(), 10, 735);
+         // only dirty tiles are redrawn, so clear what the last count left behind
+         view.redrawScreenArea(10, 735 - ceil(textAscent()),
+                 ceil(textWidth(collected)) + 1,
+                 ceil(textAscent() + textDescent()));
+         view.drawViewport();
+         text(collected, 10, 735);
       } else {
+         view.redrawAll();
+         view.drawViewport();
          textSize(100);
          text("GAME OVER!", 300, 380);
          textSize(60);
@@ -125,10 +183,36 @@ public final class VirtualWorld
                dx = 1;
                break;
          }
-         Point pt = new Point (dx, dy);
+         Point pt = new Point(dx, dy);
          MainCollector collector = MainCollector.getInstance();
          collector.moveCollector(pt, imageStore, world, scheduler);
       }
+      else if (key == SAVE_KEY)
+      {
+         try
+         {
+            WorldSnapshot.save(new File(SNAPSHOT_FILE_NAME), world, scheduler, imageStore);
+         }
+         catch (IOException e)
+         {
+            System.err.println(e.getMessage());
+         }
+      }
+   }
+
+   /* false if there was no usable snapshot to carry on from */
+   private boolean resume(String filename)
+   {
+      try
+      {
+         WorldSnapshot.load(new File(filename), world, scheduler, imageStore);
+         return true;
+      }
+      catch (IOException e)
+      {
+         System.err.println(e.getMessage());
+         return false;
+      }
    }
 
    public void mouseClicked() {
@@ -174,7 +258,7 @@ public final class VirtualWorld
       try
       {
          Scanner in = new Scanner(new File(filename));
-         imageStore.loadImages(in, screen);
+         imageStore.loadImages(in, screen, new File(IMAGE_CACHE_FILE_NAME));
       }
       catch (FileNotFoundException e)
       {
@@ -182,29 +266,72 @@ public final class VirtualWorld
       }
    }
 
-   public void loadWorld(WorldModel world, String filename,
+   public static void loadWorld(WorldModel world, String filename,
       ImageStore imageStore)
    {
-      try
+      try (InputStream in = new FileInputStream(filename))
       {
-         Scanner in = new Scanner(new File(filename));
          world.load(in, world, imageStore);
       }
-      catch (FileNotFoundException e)
+      catch (IOException e)
       {
          System.err.println(e.getMessage());
       }
    }
 
-   public void scheduleActions(WorldModel world,
+   public static void scheduleActions(WorldModel world,
       EventScheduler scheduler, ImageStore imageStore)
    {
-      for (Entity entity : world.getEntities())
+      for (Class<?> kind : world.getEntityKinds())
       {
          //Only start actions for entities that include action (not those with just animations)
-         if (entity instanceof Obstacle|| entity instanceof MainCollector){continue;}
-         else if  (((ActiveEntity)entity).getActionPeriod() > 0)
-            ((ActiveEntity)entity).scheduleActions(scheduler, world, imageStore);
+         if (!ActiveEntity.class.isAssignableFrom(kind)){continue;}
+         for (Entity entity : world.getEntitiesOfType(kind))
+         {
+            if (((ActiveEntity)entity).getActionPeriod() > 0)
+               ((ActiveEntity)entity).scheduleActions(scheduler, world, imageStore);
+         }
+      }
+   }
+
+   /*
+      Puts helpers and the bear on A* / greedy searches with node budgets
+      and memory of unreachable goals
+   */
+   public static SearchLimits useSearchLimits(WorldModel world,
+      EventScheduler scheduler)
+   {
+      SearchLimits limits = new SearchLimits(SEARCH_BUDGET, TICK_SEARCH_BUDGET,
+         scheduler);
+      world.addOccupancyListener(limits);
+      Helper.setDefaultStrategy(new AStarPathingStrategy(limits));
+      Bear.setStrategy(new NewPathingStrategy(limits));
+      return limits;
+   }
+
+   /*
+      Has movers' steps planned in parallel before each batch of events; the
+      planner follows the world's occupancy to know which plans still hold
+   */
+   public static void usePathPlanner(WorldModel world, EventScheduler scheduler)
+   {
+      PathPlanner planner = new PathPlanner();
+      world.addOccupancyListener(planner);
+      scheduler.setPlanner(planner);
+   }
+
+   /*
+      -gridpath, -dstar and -bounded each set the helpers' default strategy,
+      so giving more than one would silently keep only the last
+   */
+   public static void checkStrategyFlags(boolean gridPath, boolean dstar,
+      boolean bounded)
+   {
+      if ((gridPath ? 1 : 0) + (dstar ? 1 : 0) + (bounded ? 1 : 0) > 1)
+      {
+         throw new IllegalArgumentException(String.format(
+            "%s, %s and %s each choose the helpers' strategy, give only one",
+            GRID_PATH_FLAG, DSTAR_FLAG, BOUNDED_FLAG));
       }
    }
 
@@ -223,13 +350,43 @@ public final class VirtualWorld
             case FASTEST_FLAG:
                timeScale = Math.min(FASTEST_SCALE, timeScale);
                break;
+            case GRID_PATH_FLAG:
+               gridPathing = true;
+               break;
+            case PARALLEL_FLAG:
+               parallelPlanning = true;
+               break;
+            case DSTAR_FLAG:
+               incrementalPathing = true;
+               break;
+            case FLOW_FIELD_FLAG:
+               flowFieldPathing = true;
+               break;
+            case JPS_FLAG:
+               jumpPointPathing = true;
+               break;
+            case BOUNDED_FLAG:
+               boundedPathing = true;
+               break;
+            case RESUME_FLAG:
+               resumeSnapshot = true;
+               break;
          }
       }
+      checkStrategyFlags(gridPathing, incrementalPathing, boundedPathing);
    }
 
    public static void main(String [] args)
    {
-      parseCommandLine(args);
+      try
+      {
+         parseCommandLine(args);
+      }
+      catch (IllegalArgumentException e)
+      {
+         System.err.println(e.getMessage());
+         return;
+      }
       PApplet.main(VirtualWorld.class);
    }
 }
@@ -0,0 +1,377 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/*
+WorldFileParser: streams a world file (world.sav) into a WorldModel
+Reads the same text format, with the same results and the same messages, as
+WorldModel.load over a Scanner, but works on the raw bytes a buffer at a time: keys are
+matched byte by byte, coordinates are parsed in place, and backgrounds are shared per id,
+so a line makes no objects beyond its Point and, for entities, the entity and its id.
+
+As with String.split("\\s"), every single space, tab, form feed or vertical tab separates
+two fields and trailing empty fields do not count. Lines end at \n, \r or \r\n. Numbers
+are ASCII digits with an optional sign, like Integer.parseInt takes them.
+ */
+
+final class WorldFileParser
+{
+   private static final int BUFFER_SIZE = 1 << 16;
+   private static final int MAX_FIELDS = 8;
+
+   /* what each key makes, and how many fields its lines have */
+   private static final class Kind
+   {
+      private final byte[] key;
+      private final int fields;
+      private final String entityType;
+      private final String imageKey;
+
+      Kind(String key, int fields, String entityType, String imageKey)
+      {
+         this.key = key.getBytes(Charset.defaultCharset());
+         this.fields = fields;
+         this.entityType = entityType;
+         this.imageKey = imageKey;
+      }
+   }
+
+   private static final Kind BACKGROUND = new Kind(WorldModel.BGND_KEY,
+      WorldModel.BGND_NUM_PROPERTIES, null, null);
+   private static final Kind[] KINDS = {
+      BACKGROUND,
+      new Kind(WorldModel.OBSTACLE_KEY, WorldModel.OBSTACLE_NUM_PROPERTIES, "OBSTACLE",
+         WorldModel.OBSTACLE_KEY),
+      new Kind(WorldModel.BASKET_KEY, WorldModel.BASKET_NUM_PROPERTIES, "BASKET",
+         WorldModel.BASKET_KEY),
+      new Kind(WorldModel.TREE_KEY, WorldModel.TREE_NUM_PROPERTIES, "TREE",
+         WorldModel.TREE_KEY),
+      new Kind(WorldModel.MAIN_KEY, WorldModel.MAIN_NUM_PROPERTIES, "MAINCOLLECTOR",
+         WorldModel.MAIN_KEY)};
+
+   private final WorldModel world;
+   private final ImageStore imageStore;
+   private final EntityFactory entityFactory = new EntityFactory();
+   private final Charset charset = Charset.defaultCharset();
+
+   private final byte[] buffer = new byte[BUFFER_SIZE];
+   // a line split over two reads is put together here
+   private byte[] line = new byte[256];
+   private int lineLength;
+   // where the current line's bytes are, buffer or line
+   private byte[] text;
+   private int textOffset;
+   private final int[] fieldStarts = new int[MAX_FIELDS];
+   private final int[] fieldEnds = new int[MAX_FIELDS];
+   private int fields;
+   private int nextField;
+   private int fieldCount;
+
+   // backgrounds by id, open addressing on the id's bytes
+   private byte[][] backgroundIds = new byte[16][];
+   private Background[] backgrounds = new Background[16];
+   private int backgroundCount;
+   private byte[] lastBackgroundId;
+   private Background lastBackground;
+
+   public WorldFileParser(WorldModel world, ImageStore imageStore)
+   {
+      this.world = world;
+      this.imageStore = imageStore;
+   }
+
+   public void load(InputStream in) throws IOException
+   {
+      int lineNumber = 0;
+      boolean lastWasCR = false;
+      int read;
+
+      byte[] buffer = this.buffer;
+      while ((read = in.read(buffer)) != -1)
+      {
+         int start = 0;
+         for (int i = 0; i < read; i++)
+         {
+            byte b = buffer[i];
+            if (b > ' ')
+            {
+               continue;
+            }
+            if (b == ' ' || (b >= '\t' && b <= '\f' && b != '\n'))
+            {
+               endField(this.lineLength + i - start);
+               continue;
+            }
+            if (b != '\n' && b != '\r')
+            {
+               continue;
+            }
+
+            // the \n of a \r\n pair ends nothing
+            if (b == '\n' && lastWasCR && i == start && this.lineLength == 0)
+            {
+               lastWasCR = false;
+               start = i + 1;
+               continue;
+            }
+            endField(this.lineLength + i - start);
+            if (this.lineLength == 0)
+            {
+               // the whole line is in the buffer, read it there
+               this.text = buffer;
+               this.textOffset = start;
+            }
+            else
+            {
+               appendLine(start, i);
+               this.text = this.line;
+               this.textOffset = 0;
+            }
+            start = i + 1;
+            processLine(lineNumber++);
+            lastWasCR = b == '\r';
+         }
+         if (start < read)
+         {
+            appendLine(start, read);
+            lastWasCR = false;
+         }
+      }
+
+      if (this.lineLength > 0)
+      {
+         endField(this.lineLength);
+         this.text = this.line;
+         this.textOffset = 0;
+         processLine(lineNumber);
+      }
+   }
+
+   /* a field of the current line ends at offset end, as String.split("\\s") cuts them */
+   private void endField(int end)
+   {
+      if (this.fields < MAX_FIELDS)
+      {
+         this.fieldStarts[this.fields] = this.nextField;
+         this.fieldEnds[this.fields] = end;
+      }
+      if (end > this.nextField)
+      {
+         // trailing empty fields do not count
+         this.fieldCount = this.fields + 1;
+      }
+      this.fields++;
+      this.nextField = end + 1;
+   }
+
+   private void appendLine(int from, int to)
+   {
+      int length = to - from;
+      if (this.lineLength + length > this.line.length)
+      {
+         this.line = Arrays.copyOf(this.line,
+            Math.max(this.line.length * 2, this.lineLength + length));
+      }
+      System.arraycopy(this.buffer, from, this.line, this.lineLength, length);
+      this.lineLength += length;
+   }
+
+   private void processLine(int lineNumber)
+   {
+      for (int field = 0; field < Math.min(this.fields, MAX_FIELDS); field++)
+      {
+         this.fieldStarts[field] += this.textOffset;
+         this.fieldEnds[field] += this.textOffset;
+      }
+      try
+      {
+         if (!parseLine())
+         {
+            System.err.println(String.format("invalid entry on line %d",
+               lineNumber));
+         }
+      }
+      catch (NumberFormatException e)
+      {
+         System.err.println(String.format("invalid entry on line %d",
+            lineNumber));
+      }
+      catch (IllegalArgumentException e)
+      {
+         System.err.println(String.format("issue on line %d: %s",
+            lineNumber, e.getMessage()));
+      }
+      this.lineLength = 0;
+      this.fields = 0;
+      this.nextField = 0;
+      this.fieldCount = 0;
+   }
+
+   private boolean parseLine()
+   {
+      Kind kind = kindOf();
+      if (kind == null || this.fieldCount != kind.fields)
+      {
+         return false;
+      }
+
+      int col = parseInt(WorldModel.COL);
+      int row = parseInt(WorldModel.ROW);
+      Point pt = new Point(col, row);
+
+      if (kind == BACKGROUND)
+      {
+         this.world.setBackground(pt, background());
+      }
+      else
+      {
+         String id = new String(this.text, this.fieldStarts[WorldModel.ID],
+            this.fieldEnds[WorldModel.ID] - this.fieldStarts[WorldModel.ID], this.charset);
+         this.world.tryAddEntity(this.entityFactory.createEntity(kind.entityType, id, pt,
+            this.imageStore.getImageList(kind.imageKey)));
+      }
+      return true;
+   }
+
+   private Kind kindOf()
+   {
+      if (this.fieldCount == 0)
+      {
+         return null;
+      }
+      for (Kind kind : KINDS)
+      {
+         if (fieldEquals(0, kind.key))
+         {
+            return kind;
+         }
+      }
+      return null;
+   }
+
+   private boolean fieldEquals(int field, byte[] value)
+   {
+      int start = this.fieldStarts[field];
+      int length = this.fieldEnds[field] - start;
+      if (length != value.length)
+      {
+         return false;
+      }
+      for (int i = 0; i < length; i++)
+      {
+         if (this.text[start + i] != value[i])
+         {
+            return false;
+         }
+      }
+      return true;
+   }
+
+   private int parseInt(int field)
+   {
+      int i = this.fieldStarts[field];
+      int end = this.fieldEnds[field];
+      boolean negative = false;
+
+      if (i < end && (this.text[i] == '-' || this.text[i] == '+'))
+      {
+         negative = this.text[i] == '-';
+         i++;
+      }
+      if (i == end)
+      {
+         throw new NumberFormatException();
+      }
+
+      // accumulate negatively so Integer.MIN_VALUE fits
+      int limit = negative ? Integer.MIN_VALUE : -Integer.MAX_VALUE;
+      int result = 0;
+      for (; i < end; i++)
+      {
+         int digit = this.text[i] - '0';
+         if (digit < 0 || digit > 9 || result < limit / 10)
+         {
+            throw new NumberFormatException();
+         }
+         result *= 10;
+         if (result < limit + digit)
+         {
+            throw new NumberFormatException();
+         }
+         result -= digit;
+      }
+      return negative ? result : -result;
+   }
+
+   /* the one Background for this line's id */
+   private Background background()
+   {
+      // neighbouring cells mostly show the same thing
+      if (this.lastBackgroundId != null && fieldEquals(WorldModel.BGND_ID, this.lastBackgroundId))
+      {
+         return this.lastBackground;
+      }
+
+      int start = this.fieldStarts[WorldModel.BGND_ID];
+      int end = this.fieldEnds[WorldModel.BGND_ID];
+      int hash = 1;
+      for (int i = start; i < end; i++)
+      {
+         hash = 31 * hash + this.text[i];
+      }
+
+      int mask = this.backgroundIds.length - 1;
+      int slot = hash & mask;
+      while (this.backgroundIds[slot] != null)
+      {
+         if (fieldEquals(WorldModel.BGND_ID, this.backgroundIds[slot]))
+         {
+            this.lastBackgroundId = this.backgroundIds[slot];
+            this.lastBackground = this.backgrounds[slot];
+            return this.lastBackground;
+         }
+         slot = (slot + 1) & mask;
+      }
+
+      String id = new String(this.text, start, end - start, this.charset);
+      Background background = new Background(id, this.imageStore.getImageList(id));
+      this.backgroundIds[slot] = Arrays.copyOfRange(this.text, start, end);
+      this.backgrounds[slot] = background;
+      this.lastBackgroundId = this.backgroundIds[slot];
+      this.lastBackground = background;
+      if (++this.backgroundCount * 2 > this.backgroundIds.length)
+      {
+         growBackgrounds();
+      }
+      return background;
+   }
+
+   private void growBackgrounds()
+   {
+      byte[][] ids = this.backgroundIds;
+      Background[] values = this.backgrounds;
+      this.backgroundIds = new byte[ids.length * 2][];
+      this.backgrounds = new Background[ids.length * 2];
+      int mask = this.backgroundIds.length - 1;
+
+      for (int i = 0; i < ids.length; i++)
+      {
+         if (ids[i] != null)
+         {
+            int hash = 1;
+            for (byte b : ids[i])
+            {
+               hash = 31 * hash + b;
+            }
+            int slot = hash & mask;
+            while (this.backgroundIds[slot] != null)
+            {
+               slot = (slot + 1) & mask;
+            }
+            this.backgroundIds[slot] = ids[i];
+            this.backgrounds[slot] = values[i];
+         }
+      }
+   }
+}
@@ -0,0 +1,152 @@
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Random;
+import java.util.Scanner;
+
+import processing.core.PConstants;
+import processing.core.PImage;
+
+/*
+WorldLoadBenchmark: the Scanner world loader vs WorldFileParser on a generated map
+Writes a world file of rows x cols background lines in a few kinds, with obstacles,
+baskets, sea grass and a collector scattered over it, then loads it from memory both ways
+into fresh WorldModels. Both loads must give the same backgrounds, the same entities in the
+same places, and leave Functions.rand in the same state.
+
+   java WorldLoadBenchmark [passes] [rows] [cols]
+ */
+
+final class WorldLoadBenchmark
+{
+   private static final int DEFAULT_PASSES = 10;
+   private static final int DEFAULT_ROWS = 1000;
+   private static final int DEFAULT_COLS = 1000;
+   private static final int WARMUP_PASSES = 2;
+   private static final long SEED = 42;
+   private static final String[] BACKGROUNDS = {"water", "sand", "rock", "kelp"};
+
+   private static byte[] generate(int rows, int cols)
+   {
+      Random random = new Random(SEED);
+      StringBuilder text = new StringBuilder(rows * cols * 24);
+      for (int row = 0; row < rows; row++)
+      {
+         for (int col = 0; col < cols; col++)
+         {
+            text.append(WorldModel.BGND_KEY).append(' ')
+               .append(BACKGROUNDS[(row / 7 + col / 11) % BACKGROUNDS.length]).append(' ')
+               .append(col).append(' ').append(row).append('\n');
+         }
+      }
+      for (int i = 0; i < rows * cols / 50; i++)
+      {
+         int col = random.nextInt(cols);
+         int row = random.nextInt(rows);
+         int kind = random.nextInt(3);
+         switch (kind)
+         {
+            case 0:
+               text.append(WorldModel.OBSTACLE_KEY).append(" obstacle_").append(i);
+               break;
+            case 1:
+               text.append(WorldModel.BASKET_KEY).append(" atlantis_").append(i);
+               break;
+            default:
+               text.append(WorldModel.TREE_KEY).append(" seaGrass_").append(i);
+               break;
+         }
+         text.append(' ').append(col).append(' ').append(row);
+         if (kind == 2)
+         {
+            text.append(' ').append(random.nextInt(10000));
+         }
+         text.append('\n');
+      }
+      text.append(WorldModel.MAIN_KEY).append(" main_1 0 0\n");
+      return text.toString().getBytes(Charset.defaultCharset());
+   }
+
+   private static WorldModel newWorld(ImageStore imageStore, int rows, int cols)
+   {
+      return new WorldModel(rows, cols, new Background(VirtualWorld.DEFAULT_IMAGE_NAME,
+         imageStore.getImageList(VirtualWorld.DEFAULT_IMAGE_NAME)));
+   }
+
+   private static int mismatches(WorldModel expected, WorldModel actual)
+   {
+      int mismatches = 0;
+      for (int row = 0; row < expected.getNumRows(); row++)
+      {
+         for (int col = 0; col < expected.getNumCols(); col++)
+         {
+            Point pt = new Point(col, row);
+            if (!expected.getBackgroundCell(pt).getId().equals(
+               actual.getBackgroundCell(pt).getId()))
+            {
+               mismatches++;
+            }
+            Entity a = expected.getOccupant(pt).orElse(null);
+            Entity b = actual.getOccupant(pt).orElse(null);
+            if (a == null ? b != null : b == null || a.getClass() != b.getClass()
+               || !a.getId().equals(b.getId()))
+            {
+               mismatches++;
+            }
+         }
+      }
+      return mismatches + Math.abs(expected.getEntities().size() - actual.getEntities().size());
+   }
+
+   public static void main(String [] args) throws IOException
+   {
+      int passes = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PASSES;
+      int rows = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_ROWS;
+      int cols = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_COLS;
+
+      byte[] file = generate(rows, cols);
+      System.out.println(String.format("%dx%d world, %d bytes", cols, rows, file.length));
+      ImageStore imageStore = new ImageStore(new PImage(VirtualWorld.TILE_WIDTH,
+         VirtualWorld.TILE_HEIGHT, PConstants.RGB));
+
+      for (int round = 0; round < 2; round++)
+      {
+         boolean report = round == 1;
+         int runs = report ? passes : WARMUP_PASSES;
+
+         // best of the passes, the machine is rarely quiet for a whole one
+         long scannerTime = Long.MAX_VALUE;
+         long streamTime = Long.MAX_VALUE;
+         int mismatches = 0;
+         for (int pass = 0; pass < runs; pass++)
+         {
+            WorldModel expected = newWorld(imageStore, rows, cols);
+            Functions.rand.setSeed(SEED);
+            // neither load pays for the other's garbage
+            System.gc();
+            long begin = System.nanoTime();
+            expected.load(new Scanner(new ByteArrayInputStream(file)), expected, imageStore);
+            scannerTime = Math.min(scannerTime, System.nanoTime() - begin);
+            int expectedNext = Functions.rand.nextInt();
+
+            WorldModel actual = newWorld(imageStore, rows, cols);
+            Functions.rand.setSeed(SEED);
+            System.gc();
+            begin = System.nanoTime();
+            actual.load(new ByteArrayInputStream(file), actual, imageStore);
+            streamTime = Math.min(streamTime, System.nanoTime() - begin);
+
+            mismatches += mismatches(expected, actual);
+            mismatches += Functions.rand.nextInt() == expectedNext ? 0 : 1;
+         }
+
+         if (report)
+         {
+            System.out.println(String.format(
+               "best load: scanner %8.1f ms, streamed %8.1f ms, %.1fx, %d mismatches",
+               scannerTime / 1e6, streamTime / 1e6,
+               (double)scannerTime / Math.max(streamTime, 1), mismatches));
+         }
+      }
+   }
+}
@@ -1,6 +1,9 @@
 import processing.core.PImage;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.*;
+import java.util.function.Consumer;
 
 /*
 WorldModel ideally keeps track of the actual size of our grid world and what is in that world
@@ -41,22 +44,28 @@ final class WorldModel
 
    private int numRows;
    private int numCols;
-   private Background background[][];
-   private Entity occupancy[][];
+   // sparse so memory follows the populated part of the world, not its size
+   private BackgroundLayer background;
+   private ChunkedGrid<Entity> occupancy;
    private Set<Entity> entities;
+   private Map<Class<?>, SpatialIndex> spatialIndexes;
+   private List<OccupancyListener> occupancyListeners;
+   // cells whose drawing changed since a view last asked; null until one asks
+   private Set<Point> dirtyCells;
+   // the subset whose background changed, for views caching the background
+   private Set<Point> dirtyBackgroundCells;
 
    public WorldModel(int numRows, int numCols, Background defaultBackground)
    {
       this.numRows = numRows;
       this.numCols = numCols;
-      this.background = new Background[numRows][numCols];
-      this.occupancy = new Entity[numRows][numCols];
-      this.entities = new HashSet<>();
-
-      for (int row = 0; row < numRows; row++)
-      {
-         Arrays.fill(this.background[row], defaultBackground);
-      }
+      this.background = new BackgroundLayer(numRows, numCols, defaultBackground);
+      this.occupancy = new ChunkedGrid<>(numRows, numCols, null);
+      // insertion ordered so iteration (and so scheduling) is reproducible
+      this.entities = new LinkedHashSet<>();
+      // insertion ordered so walking the registries is reproducible
+      this.spatialIndexes = new LinkedHashMap<>();
+      this.occupancyListeners = new ArrayList<>();
    }
 
    public int getFruitsCollected() {
@@ -78,12 +87,38 @@ final class WorldModel
    public int getNumRows(){
       return this.numRows;
    }
+   /* chunks of occupancy storage in use */
+   public int getAllocatedChunks(){
+      return occupancy.getAllocatedChunks();
+   }
+
+   /* runs stored for painted background rows */
+   public int getBackgroundRuns(){
+      return background.getRunCount();
+   }
+
    public int getNumCols(){
       return this.numCols;
    }
    public Set<Entity> getEntities(){
       return entities;
    }
+
+   /* classes that have had entities in this world, in order of first appearance */
+   public Set<Class<?>> getEntityKinds(){
+      return Collections.unmodifiableSet(this.spatialIndexes.keySet());
+   }
+
+   /* entities of exactly this class, in the order they were added */
+   public Collection<Entity> getEntitiesOfType(Class<?> kind){
+      SpatialIndex ofType = this.spatialIndexes.get(kind);
+      return ofType == null ? Collections.emptyList() : ofType.getEntities();
+   }
+
+   public int getEntityCount(Class<?> kind){
+      SpatialIndex ofType = this.spatialIndexes.get(kind);
+      return ofType == null ? 0 : ofType.size();
+   }
    public PImage getCurrentImage(Object entity)
    {
       if (entity instanceof Background)
@@ -114,7 +149,7 @@ final class WorldModel
    }
    public Entity getOccupancyCell(Point pos)
    {
-      return this.occupancy[pos.y][pos.x];
+      return this.occupancy.get(pos.x, pos.y);
    }
    public void tryAddEntity(Entity entity)
    {
@@ -165,23 +200,30 @@ final class WorldModel
 
    public Optional<Entity> findNearest(Point pos, Class kind)
    {
-      List<Entity> ofType = new LinkedList<>();
-      for (Entity entity : this.entities)
+      SpatialIndex ofType = this.spatialIndexes.get(kind);
+      if (ofType == null)
       {
-         if (entity.getClass().equals(kind))
-         {
-            ofType.add(entity);
-         }
+         return Optional.empty();
       }
 
-      return nearestEntity(ofType, pos);
+      return ofType.nearest(pos);
+   }
+
+   private SpatialIndex spatialIndex(Entity entity)
+   {
+      return this.spatialIndexes.computeIfAbsent(entity.getClass(),
+              kind -> new SpatialIndex(this.numRows, this.numCols));
    }
+
    public void addEntity(Entity entity)
    {
       if (withinBounds(entity.getPosition()))
       {
          setOccupancyCell(entity.getPosition(), entity);
-         this.entities.add(entity);
+         if (this.entities.add(entity))
+         {
+            spatialIndex(entity).add(entity);
+         }
       }
    }
 
@@ -193,6 +235,10 @@ final class WorldModel
          setOccupancyCell(oldPos, null);
          removeEntityAt(pos);
          setOccupancyCell(pos, entity);
+         if (this.entities.contains(entity))
+         {
+            spatialIndex(entity).move(entity, pos);
+         }
          entity.setPosition(pos);
       }
    }
@@ -209,10 +255,14 @@ final class WorldModel
       {
          Entity entity = getOccupancyCell(pos);
 
+         if (this.entities.remove(entity))
+         {
+            spatialIndex(entity).remove(entity);
+         }
+
          /* this moves the entity just outside of the grid for
             debugging purposes */
          entity.setPosition(new Point(-1, -1));
-         this.entities.remove(entity);
          setOccupancyCell(pos, null);
       }
    }
@@ -250,21 +300,110 @@ final class WorldModel
       }
    }
 
+   public void addOccupancyListener(OccupancyListener listener)
+   {
+      this.occupancyListeners.add(listener);
+   }
+
+   public void removeOccupancyListener(OccupancyListener listener)
+   {
+      this.occupancyListeners.remove(listener);
+   }
+
+   /*
+      Start recording cells whose drawing changes: occupants, backgrounds and
+      animation frames. Without a view nothing is recorded.
+   */
+   public void trackDirtyCells()
+   {
+      if (this.dirtyCells == null)
+      {
+         this.dirtyCells = new HashSet<>();
+         this.dirtyBackgroundCells = new HashSet<>();
+      }
+   }
+
+   public void markDirty(Point pos)
+   {
+      if (this.dirtyCells != null && withinBounds(pos))
+      {
+         this.dirtyCells.add(pos);
+      }
+   }
+
+   private void markBackgroundDirty(Point pos)
+   {
+      if (this.dirtyBackgroundCells != null && withinBounds(pos))
+      {
+         this.dirtyBackgroundCells.add(pos);
+         this.dirtyCells.add(pos);
+      }
+   }
+
+   public int getDirtyCellCount()
+   {
+      return this.dirtyCells == null ? 0 : this.dirtyCells.size();
+   }
+
+   /* hands every cell marked since the last drain to visitor and forgets them */
+   public void drainDirtyCells(Consumer<Point> visitor)
+   {
+      if (this.dirtyCells != null)
+      {
+         this.dirtyCells.forEach(visitor);
+         this.dirtyCells.clear();
+      }
+   }
+
+   /* like drainDirtyCells, for only the cells whose background changed */
+   public void drainDirtyBackgroundCells(Consumer<Point> visitor)
+   {
+      if (this.dirtyBackgroundCells != null)
+      {
+         this.dirtyBackgroundCells.forEach(visitor);
+         this.dirtyBackgroundCells.clear();
+      }
+   }
+
    public void setOccupancyCell(Point pos,
                                        Entity entity)
    {
-      this.occupancy[pos.y][pos.x] = entity;
+      boolean wasOccupied = this.occupancy.get(pos.x, pos.y) != null;
+      this.occupancy.set(pos.x, pos.y, entity);
+      markDirty(pos);
+
+      /* swapping one occupant for another changes nothing for pathing */
+      if (wasOccupied != (entity != null))
+      {
+         for (OccupancyListener listener : this.occupancyListeners)
+         {
+            listener.occupancyChanged(pos);
+         }
+      }
    }
 
    public Background getBackgroundCell(Point pos)
    {
-      return this.background[pos.y][pos.x];
+      return this.background.get(pos.x, pos.y);
    }
 
    public void setBackgroundCell(Point pos,
                                         Background background)
    {
-      this.background[pos.y][pos.x] = background;
+      this.background.set(pos.x, pos.y, background);
+      markBackgroundDirty(pos);
+   }
+
+   public Background getDefaultBackground()
+   {
+      return this.background.getDefault();
+   }
+
+   /* background of columns [fromCol, toCol) of a row, a run at a time */
+   public void forEachBackgroundRun(int row, int fromCol, int toCol,
+                                    BackgroundLayer.RunVisitor visitor)
+   {
+      this.background.forEachRun(row, fromCol, toCol, visitor);
    }
    public Optional<Point> findOpenAround(Point pos)
    {
@@ -404,6 +543,13 @@ final class WorldModel
       }
    }
 
+   /* same as the Scanner load, streamed straight off the bytes by a WorldFileParser */
+   public void load(InputStream in, WorldModel world, ImageStore imageStore)
+      throws IOException
+   {
+      new WorldFileParser(world, imageStore).load(in);
+   }
+
 
 
 }
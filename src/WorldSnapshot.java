@@ -0,0 +1,467 @@
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+import processing.core.PImage;
+
+/*
+WorldSnapshot: binary checkpoint of a running world and its scheduler
+Holds everything that decides what happens next: the background, every entity (its
+periods, frame and helper state, including entities only the event queue still refers
+to), the pending events with their sequence numbers, the click and fruit counters and the
+shared random generator. Loading it into a fresh world and scheduler on a DiscreteClock
+carries on exactly as the saved run would have; on a real time clock events keep their
+delays relative to now. Caches kept by pathing strategies are not saved and fill up again.
+
+Layout, big endian: header (magic, version, world size, clock time, next event sequence,
+counters, generator state), background palette then the painted runs of each row, entity
+table, pending events in sequence order. The file is written and read through a
+FileChannel, reading from a memory map.
+ */
+
+final class WorldSnapshot
+{
+   private static final int MAGIC = 0x57534e50;
+   private static final int VERSION = 2;
+
+   /* an entity's kind is saved as its index here */
+   private static final List<Class<? extends Entity>> KINDS = Arrays.asList(
+      Obstacle.class, MainCollector.class, Tree.class, Fruit.class, Bear.class,
+      HelperNotFull.class, HelperFull.class, Basket.class, Quake.class);
+
+   private static final byte ACTIVITY = 0;
+   private static final byte ANIMATION = 1;
+   private static final int NO_PATH = -1;
+
+   // the fewest bytes each saved item takes, to check counts before allocating
+   private static final int RUN_BYTES = 12;
+   private static final int ENTITY_BYTES = 22;
+   private static final int EVENT_BYTES = 21;
+   private static final int POINT_BYTES = 8;
+
+   private WorldSnapshot()
+   {
+   }
+
+   public static void save(File file, WorldModel world, EventScheduler scheduler,
+      ImageStore imageStore) throws IOException
+   {
+      List<Event> events = new ArrayList<>();
+      scheduler.forEachPendingEvent(events::add);
+      events.sort(Comparator.comparingLong(Event::getSequence));
+
+      // entities of the world in order, then any only the queue still knows about
+      Map<Entity, Integer> indexes = new LinkedHashMap<>();
+      for (Entity entity : world.getEntities())
+      {
+         indexes.put(entity, indexes.size());
+      }
+      for (Event event : events)
+      {
+         indexes.putIfAbsent(event.getEntity(), indexes.size());
+      }
+
+      long now = scheduler.getClock().currentTime();
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      DataOutputStream out = new DataOutputStream(bytes);
+
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeInt(world.getNumRows());
+      out.writeInt(world.getNumCols());
+      out.writeLong(now);
+      out.writeLong(scheduler.getNextSequence());
+      out.writeInt(world.getFruitsCollected());
+      out.writeInt(world.getFruitsOnScreen());
+      out.writeInt(Obstacle.getObstacleCount());
+      out.writeInt(Obstacle.getHelperCount());
+      out.writeInt(Fruit.getBearCount());
+      out.writeLong(Functions.rand.getState());
+
+      writeBackground(out, world);
+
+      out.writeInt(indexes.size());
+      for (Entity entity : indexes.keySet())
+      {
+         writeEntity(out, entity, world.getEntities().contains(entity), imageStore);
+      }
+
+      out.writeInt(events.size());
+      for (Event event : events)
+      {
+         out.writeInt(indexes.get(event.getEntity()));
+         Action action = event.getAction();
+         if (action instanceof Activity)
+         {
+            out.writeByte(ACTIVITY);
+         }
+         else if (action instanceof Animation)
+         {
+            out.writeByte(ANIMATION);
+            out.writeInt(((Animation)action).getRepeatCount());
+         }
+         else
+         {
+            throw new IOException("cannot save a " + action.getClass().getName());
+         }
+         out.writeLong(event.getTime() - now);
+         out.writeLong(event.getSequence());
+      }
+      out.flush();
+
+      try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+         StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+      {
+         ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+         while (buffer.hasRemaining())
+         {
+            channel.write(buffer);
+         }
+      }
+   }
+
+   /*
+      Fills an empty world and scheduler of the snapshot's size from file;
+      a DiscreteClock is first moved on to the saved time
+   */
+   public static void load(File file, WorldModel world, EventScheduler scheduler,
+      ImageStore imageStore) throws IOException
+   {
+      try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ))
+      {
+         ByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+         read(in, world, scheduler, imageStore);
+      }
+      catch (BufferUnderflowException | IndexOutOfBoundsException e)
+      {
+         throw new IOException("truncated or corrupt snapshot " + file);
+      }
+   }
+
+   private static void read(ByteBuffer in, WorldModel world, EventScheduler scheduler,
+      ImageStore imageStore) throws IOException
+   {
+      if (in.remaining() < 8 || in.getInt() != MAGIC || in.getInt() != VERSION)
+      {
+         throw new IOException("not a world snapshot");
+      }
+      int numRows = in.getInt();
+      int numCols = in.getInt();
+      if (numRows != world.getNumRows() || numCols != world.getNumCols())
+      {
+         throw new IOException(String.format("snapshot is %dx%d, world is %dx%d",
+            numCols, numRows, world.getNumCols(), world.getNumRows()));
+      }
+
+      long saved = in.getLong();
+      Clock clock = scheduler.getClock();
+      if (clock instanceof DiscreteClock && clock.currentTime() < saved)
+      {
+         ((DiscreteClock)clock).advanceTo(saved);
+      }
+      long now = clock.currentTime();
+
+      long nextSequence = in.getLong();
+      world.setFruitsCollected(in.getInt());
+      world.setFruitsOnScreen(in.getInt());
+      Obstacle.setObstacleCount(in.getInt());
+      Obstacle.setHelperCount(in.getInt());
+      Fruit.setBearCount(in.getInt());
+      Functions.rand.setState(in.getLong());
+
+      readBackground(in, world, imageStore);
+
+      Entity[] entities = new Entity[readCount(in, ENTITY_BYTES)];
+      for (int i = 0; i < entities.length; i++)
+      {
+         entities[i] = readEntity(in, world, imageStore);
+      }
+
+      int events = readCount(in, EVENT_BYTES);
+      for (int i = 0; i < events; i++)
+      {
+         int index = in.getInt();
+         if (index < 0 || index >= entities.length
+            || !(entities[index] instanceof ActiveEntity))
+         {
+            throw new IOException("corrupt snapshot: event for entity " + index);
+         }
+         ActiveEntity entity = (ActiveEntity)entities[index];
+         byte kind = in.get();
+         Action action;
+         if (kind == ACTIVITY)
+         {
+            action = entity.createActivityAction(world, imageStore);
+         }
+         else if (kind == ANIMATION && entity instanceof AnimatedEntity)
+         {
+            action = new Animation((AnimatedEntity)entity, world, in.getInt());
+         }
+         else
+         {
+            throw new IOException("corrupt snapshot: event of kind " + kind);
+         }
+         long time = now + in.getLong();
+         scheduler.restoreEvent(entity, action, time, in.getLong());
+      }
+      scheduler.setNextSequence(nextSequence);
+   }
+
+   private static void writeBackground(DataOutputStream out, WorldModel world)
+      throws IOException
+   {
+      Background fill = world.getDefaultBackground();
+      Map<String, Integer> palette = new LinkedHashMap<>();
+      ByteArrayOutputStream rowBytes = new ByteArrayOutputStream();
+      DataOutputStream rows = new DataOutputStream(rowBytes);
+      List<int[]> runs = new ArrayList<>();
+
+      for (int row = 0; row < world.getNumRows(); row++)
+      {
+         runs.clear();
+         world.forEachBackgroundRun(row, 0, world.getNumCols(), (start, end, background) -> {
+            if (background != fill)
+            {
+               int index = palette.computeIfAbsent(background.getId(), id -> palette.size());
+               runs.add(new int[] {start, end, index});
+            }
+         });
+
+         rows.writeInt(runs.size());
+         for (int[] run : runs)
+         {
+            rows.writeInt(run[0]);
+            rows.writeInt(run[1]);
+            rows.writeInt(run[2]);
+         }
+      }
+      rows.flush();
+
+      out.writeInt(palette.size());
+      for (String id : palette.keySet())
+      {
+         writeString(out, id);
+      }
+      rowBytes.writeTo(out);
+   }
+
+   private static void readBackground(ByteBuffer in, WorldModel world, ImageStore imageStore)
+      throws IOException
+   {
+      Background[] palette = new Background[readCount(in, Integer.BYTES)];
+      for (int i = 0; i < palette.length; i++)
+      {
+         // backgrounds always show the images loaded under their id
+         String id = readString(in);
+         palette[i] = new Background(id, imageStore.getImageList(id));
+      }
+
+      for (int row = 0; row < world.getNumRows(); row++)
+      {
+         int runs = readCount(in, RUN_BYTES);
+         for (int run = 0; run < runs; run++)
+         {
+            int start = in.getInt();
+            int end = in.getInt();
+            int index = in.getInt();
+            if (start < 0 || start > end || end > world.getNumCols()
+               || index < 0 || index >= palette.length)
+            {
+               throw new IOException("corrupt snapshot: background run in row " + row);
+            }
+            Background background = palette[index];
+            for (int col = start; col < end; col++)
+            {
+               world.setBackgroundCell(new Point(col, row), background);
+            }
+         }
+      }
+   }
+
+   private static void writeEntity(DataOutputStream out, Entity entity, boolean inWorld,
+      ImageStore imageStore) throws IOException
+   {
+      int kind = KINDS.indexOf(entity.getClass());
+      if (kind < 0)
+      {
+         throw new IOException("cannot save a " + entity.getClass().getName());
+      }
+      String imageKey = imageStore.getKey(entity.getImages());
+
+      out.writeByte(kind);
+      writeString(out, entity.getId());
+      writeString(out, imageKey == null ? "" : imageKey);
+      writePoint(out, entity.getPosition());
+      out.writeInt(entity.getImageIndex());
+      out.writeBoolean(inWorld);
+
+      if (entity instanceof ActiveEntity)
+      {
+         out.writeInt(((ActiveEntity)entity).getActionPeriod());
+      }
+      if (entity instanceof AnimatedEntity)
+      {
+         out.writeInt(((AnimatedEntity)entity).getAnimationPeriod());
+      }
+      if (entity instanceof Helper)
+      {
+         Helper helper = (Helper)entity;
+         out.writeInt(helper.getResourceLimit());
+         if (helper instanceof HelperNotFull)
+         {
+            out.writeInt(((HelperNotFull)helper).getResourceCount());
+         }
+
+         List<Point> path = helper.getCachedPath();
+         if (path == null)
+         {
+            out.writeInt(NO_PATH);
+         }
+         else
+         {
+            out.writeInt(path.size());
+            for (Point step : path)
+            {
+               writePoint(out, step);
+            }
+            out.writeInt(helper.getCachedPathIndex());
+            writePoint(out, helper.getCachedPathFrom());
+            writePoint(out, helper.getCachedPathTarget());
+         }
+      }
+   }
+
+   private static Entity readEntity(ByteBuffer in, WorldModel world, ImageStore imageStore)
+      throws IOException
+   {
+      byte index = in.get();
+      if (index < 0 || index >= KINDS.size())
+      {
+         throw new IOException("corrupt snapshot: entity of kind " + index);
+      }
+      Class<? extends Entity> kind = KINDS.get(index);
+      String id = readString(in);
+      String imageKey = readString(in);
+      List<PImage> images = imageStore.getImageList(imageKey.isEmpty() ? null : imageKey);
+      Point position = readPoint(in);
+      int imageIndex = in.getInt();
+      boolean inWorld = in.get() != 0;
+
+      int actionPeriod = ActiveEntity.class.isAssignableFrom(kind) ? in.getInt() : 0;
+      int animationPeriod = AnimatedEntity.class.isAssignableFrom(kind) ? in.getInt() : 0;
+
+      Entity entity;
+      if (kind == Obstacle.class)
+      {
+         entity = new Obstacle(id, position, images);
+      }
+      else if (kind == MainCollector.class)
+      {
+         entity = MainCollector.restoreInstance(id, position, images);
+      }
+      else if (kind == Tree.class)
+      {
+         entity = new Tree(id, position, images, actionPeriod);
+      }
+      else if (kind == Fruit.class)
+      {
+         entity = new Fruit(id, position, images, actionPeriod, animationPeriod);
+      }
+      else if (kind == Bear.class)
+      {
+         entity = new Bear(id, position, images, actionPeriod, animationPeriod);
+      }
+      else if (kind == Basket.class)
+      {
+         entity = new Basket(id, position, images, actionPeriod, animationPeriod);
+      }
+      else if (kind == Quake.class)
+      {
+         entity = new Quake(id, position, images, actionPeriod, animationPeriod);
+      }
+      else
+      {
+         int resourceLimit = in.getInt();
+         Helper helper = kind == HelperNotFull.class
+            ? new HelperNotFull(id, position, images, resourceLimit, in.getInt(),
+               actionPeriod, animationPeriod)
+            : new HelperFull(id, position, images, resourceLimit, actionPeriod,
+               animationPeriod);
+
+         int steps = in.getInt();
+         if (steps != NO_PATH)
+         {
+            if (steps < 0 || steps > in.remaining() / POINT_BYTES)
+            {
+               throw new IOException("corrupt snapshot: path of " + steps + " steps");
+            }
+            List<Point> path = new ArrayList<>(steps);
+            for (int i = 0; i < steps; i++)
+            {
+               path.add(readPoint(in));
+            }
+            int pathIndex = in.getInt();
+            Point pathFrom = readPoint(in);
+            helper.restoreCachedPath(path, pathIndex, pathFrom, readPoint(in));
+         }
+         entity = helper;
+      }
+
+      entity.setImageIndex(imageIndex);
+      if (inWorld)
+      {
+         world.addEntity(entity);
+      }
+      return entity;
+   }
+
+   private static void writePoint(DataOutputStream out, Point point) throws IOException
+   {
+      out.writeInt(point.x);
+      out.writeInt(point.y);
+   }
+
+   private static Point readPoint(ByteBuffer in)
+   {
+      int x = in.getInt();
+      return new Point(x, in.getInt());
+   }
+
+   private static void writeString(DataOutputStream out, String value) throws IOException
+   {
+      writeBytes(out, value.getBytes(StandardCharsets.UTF_8));
+   }
+
+   private static String readString(ByteBuffer in) throws IOException
+   {
+      return new String(readBytes(in), StandardCharsets.UTF_8);
+   }
+
+   private static void writeBytes(DataOutputStream out, byte[] value) throws IOException
+   {
+      out.writeInt(value.length);
+      out.write(value);
+   }
+
+   private static byte[] readBytes(ByteBuffer in) throws IOException
+   {
+      byte[] value = new byte[readCount(in, 1)];
+      in.get(value);
+      return value;
+   }
+
+   /* a count of items of at least itemBytes each, no more than the rest of the file holds */
+   private static int readCount(ByteBuffer in, int itemBytes) throws IOException
+   {
+      int count = in.getInt();
+      if (count < 0 || count > in.remaining() / itemBytes)
+      {
+         throw new IOException("corrupt snapshot: count of " + count);
+      }
+      return count;
+   }
+}
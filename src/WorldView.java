@@ -1,11 +1,16 @@
 import processing.core.PApplet;
+import processing.core.PGraphics;
 import processing.core.PImage;
 
-import java.util.Optional;
-
 /*
 WorldView ideally mostly controls drawing the current part of the whole world
 that we can see based on the viewport
+Processing keeps the last frame on screen, so after one full draw only the tiles the world
+reports dirty (new occupant, background or animation frame) are drawn again, background
+first and then whatever stands on it. Moving the viewport redraws everything.
+The visible background is kept pre-composited in an offscreen buffer, so a full redraw
+blits it in one call; only changed background cells, and the strips scrolled into view,
+are rendered into it again.
 */
 
 final class WorldView
@@ -15,6 +20,14 @@ final class WorldView
    private int tileWidth;
    private int tileHeight;
    private Viewport viewport;
+   private boolean fullRedraw;
+   private long tilesDrawn;
+   private SpriteAtlas atlas;
+
+   // the viewport's background, drawn for the viewport at backgroundCol/Row
+   private PGraphics background;
+   private int backgroundCol;
+   private int backgroundRow;
 
    public WorldView(int numRows, int numCols, PApplet screen, WorldModel world,
       int tileWidth, int tileHeight)
@@ -24,25 +37,116 @@ final class WorldView
       this.tileWidth = tileWidth;
       this.tileHeight = tileHeight;
       this.viewport = new Viewport(numRows, numCols);
+      this.fullRedraw = true;
+      world.trackDirtyCells();
+   }
+
+   /* frames in the atlas are drawn from its pages */
+   public void setAtlas(SpriteAtlas atlas)
+   {
+      this.atlas = atlas;
+   }
+
+   /* tile images drawn so far, backgrounds and entities both */
+   public long getTilesDrawn()
+   {
+      return tilesDrawn;
+   }
+
+   /*
+      Blits the cached background, first bringing it up to date with the
+      viewport and with any background cells changed since last time
+   */
+   public void drawBackground()
+   {
+      updateBackground();
+      this.screen.image(this.background, 0, 0);
+   }
+
+   private void updateBackground()
+   {
+      int col = this.viewport.getCol();
+      int row = this.viewport.getRow();
+      int numCols = this.viewport.getNumCols();
+      int numRows = this.viewport.getNumRows();
+
+      if (this.background == null)
+      {
+         this.background = this.screen.createGraphics(numCols * this.tileWidth,
+                 numRows * this.tileHeight);
+         this.background.beginDraw();
+         renderBackground(this.background, col, row, col + numCols, row + numRows);
+         this.background.endDraw();
+      }
+      else if (col != this.backgroundCol || row != this.backgroundRow)
+      {
+         // keep the part still in view, moved over, and render only what scrolled in
+         int keptFromCol = Math.max(col, this.backgroundCol);
+         int keptToCol = Math.min(col, this.backgroundCol) + numCols;
+         int keptFromRow = Math.max(row, this.backgroundRow);
+         int keptToRow = Math.min(row, this.backgroundRow) + numRows;
+
+         this.background.beginDraw();
+         if (keptFromCol >= keptToCol || keptFromRow >= keptToRow)
+         {
+            renderBackground(this.background, col, row, col + numCols, row + numRows);
+         }
+         else
+         {
+            int width = (keptToCol - keptFromCol) * this.tileWidth;
+            int height = (keptToRow - keptFromRow) * this.tileHeight;
+            this.background.copy(
+                    (keptFromCol - this.backgroundCol) * this.tileWidth,
+                    (keptFromRow - this.backgroundRow) * this.tileHeight, width, height,
+                    (keptFromCol - col) * this.tileWidth,
+                    (keptFromRow - row) * this.tileHeight, width, height);
+            renderBackground(this.background, col, row, col + numCols, keptFromRow);
+            renderBackground(this.background, col, keptToRow, col + numCols, row + numRows);
+            renderBackground(this.background, col, keptFromRow, keptFromCol, keptToRow);
+            renderBackground(this.background, keptToCol, keptFromRow, col + numCols, keptToRow);
+         }
+         this.background.endDraw();
+      }
+      this.backgroundCol = col;
+      this.backgroundRow = row;
+
+      this.background.beginDraw();
+      this.world.drainDirtyBackgroundCells(pos -> {
+         if (contains(this.viewport, pos))
+         {
+            renderBackground(this.background, pos.x, pos.y, pos.x + 1, pos.y + 1);
+         }
+      });
+      this.background.endDraw();
+   }
+
+   /*
+      Draws the background of world columns [fromCol, toCol) and rows
+      [fromRow, toRow) into the buffer, clipped to the world
+   */
+   private void renderBackground(PGraphics buffer, int fromCol, int fromRow,
+      int toCol, int toRow)
+   {
+      int clippedFromCol = Math.max(fromCol, 0);
+      int clippedToCol = Math.min(toCol, this.world.getNumCols());
+
+      for (int worldRow = Math.max(fromRow, 0);
+           worldRow < Math.min(toRow, this.world.getNumRows()); worldRow++)
+      {
+         int y = (worldRow - this.viewport.getRow()) * this.tileHeight;
+         // one image lookup per run of equal tiles
+         this.world.forEachBackgroundRun(worldRow, clippedFromCol, clippedToCol,
+                 (startCol, endCol, background) -> {
+            PImage image = this.world.getCurrentImage(background);
+            for (int col = startCol; col < endCol; col++)
+            {
+               drawImage(buffer, image, (col - this.viewport.getCol()) * this.tileWidth, y);
+            }
+            this.tilesDrawn += endCol - startCol;
+         });
+      }
    }
 
-    public void drawBackground()
-    {
-       for (int row = 0; row < this.viewport.getNumRows(); row++)
-       {
-          for (int col = 0; col < this.viewport.getNumCols(); col++)
-          {
-             Point worldPoint = this.viewport.viewportToWorld(col, row);
-             Optional<PImage> image = world.getBackgroundImage(worldPoint);
-             if (image.isPresent())
-             {
-                this.screen.image(image.get(), col * this.tileWidth,
-                        row * this.tileHeight);
-             }
-          }
-       }
-
-    }
    public void drawEntities()
    {
       for (Entity entity : this.world.getEntities())
@@ -52,15 +156,88 @@ final class WorldView
          if (contains(this.viewport, pos))
          {
             Point viewPoint = worldToViewport(this.viewport, pos.x, pos.y);
-            this.screen.image(this.world.getCurrentImage(entity),
+            drawImage(this.screen.g, this.world.getCurrentImage(entity),
                     viewPoint.x * this.tileWidth, viewPoint.y * this.tileHeight);
+            this.tilesDrawn++;
          }
       }
    }
    public void drawViewport()
    {
-      drawBackground();
-      drawEntities();
+      // past half the screen one pass over everything is cheaper than tile by tile
+      if (this.fullRedraw || this.world.getDirtyCellCount() >
+              this.viewport.getNumRows() * this.viewport.getNumCols() / 2)
+      {
+         this.world.drainDirtyCells(pos -> {});
+         drawBackground();
+         drawEntities();
+         this.fullRedraw = false;
+      }
+      else
+      {
+         updateBackground();
+         this.world.drainDirtyCells(this::drawTile);
+      }
+   }
+
+   /* everything is drawn again next frame */
+   public void redrawAll()
+   {
+      this.fullRedraw = true;
+   }
+
+   /*
+      Tiles under a screen rectangle are drawn again next frame, e.g. where
+      text drawn over the world changes
+   */
+   public void redrawScreenArea(int x, int y, int width, int height)
+   {
+      int fromCol = Math.max(x, 0) / this.tileWidth;
+      int fromRow = Math.max(y, 0) / this.tileHeight;
+      int toCol = Math.min((x + width - 1) / this.tileWidth, this.viewport.getNumCols() - 1);
+      int toRow = Math.min((y + height - 1) / this.tileHeight, this.viewport.getNumRows() - 1);
+
+      for (int row = fromRow; row <= toRow; row++)
+      {
+         for (int col = fromCol; col <= toCol; col++)
+         {
+            this.world.markDirty(this.viewport.viewportToWorld(col, row));
+         }
+      }
+   }
+
+   private void drawImage(PGraphics target, PImage image, int x, int y)
+   {
+      if (this.atlas == null)
+      {
+         target.image(image, x, y);
+      }
+      else
+      {
+         this.atlas.draw(target, image, x, y);
+      }
+   }
+
+   private void drawTile(Point pos)
+   {
+      if (!contains(this.viewport, pos))
+      {
+         return;
+      }
+
+      Point viewPoint = worldToViewport(this.viewport, pos.x, pos.y);
+      int x = viewPoint.x * this.tileWidth;
+      int y = viewPoint.y * this.tileHeight;
+      drawImage(this.screen.g, this.world.getCurrentImage(this.world.getBackgroundCell(pos)),
+              x, y);
+      this.tilesDrawn++;
+
+      Entity occupant = this.world.getOccupancyCell(pos);
+      if (occupant != null)
+      {
+         drawImage(this.screen.g, this.world.getCurrentImage(occupant), x, y);
+         this.tilesDrawn++;
+      }
    }
    public boolean contains(Viewport viewport, Point p)
    {
@@ -78,7 +255,11 @@ final class WorldView
       int newRow = clamp(this.viewport.getRow() + rowDelta, 0,
               this.world.getNumRows() - this.viewport.getNumRows());
 
-      this.viewport.shift(newCol, newRow);
+      if (newCol != this.viewport.getCol() || newRow != this.viewport.getRow())
+      {
+         this.viewport.shift(newCol, newRow);
+         this.fullRedraw = true;
+      }
    }
    public  int clamp(int value, int low, int high)
    {